@@ -1,7 +1,16 @@
 package com.company;
 
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.zip.CRC32;
 
 /**
  * Written by Renata Shakirova, B20-03
@@ -55,6 +64,13 @@ public class Main {
             this.weight = weigth;
             this.bandwidth = bandwidth;
         }
+
+        /**
+         * @return The bits of the weight and the bandwidth as WeightCodec.W_AND_B encodes them, without creating the object.
+         */
+        static long bits(int weight, int bandwidth){
+            return ((long) weight << 32) | (bandwidth & 0xFFFFFFFFL);
+        }
     }
 
     /**
@@ -128,6 +144,160 @@ public class Main {
          */
         boolean hasEdge(Vertex<T> v, Vertex<T> u) throws Exception;
 
+        /**
+         * Visits all the edges from the vertex without creating any objects.
+         * @param vertexId The id of the vertex from which the edges begin.
+         * @param visitor Gets the id of the vertex at which every edge ends and the weight of the edge.
+         */
+        void forEachOut(int vertexId, EdgeVisitor visitor);
+
+        /**
+         * Visits all the edges to the vertex without creating any objects.
+         * @param vertexId The id of the vertex at which the edges end.
+         * @param visitor Gets the id of the vertex from which every edge begins and the weight of the edge.
+         */
+        void forEachIn(int vertexId, EdgeVisitor visitor);
+
+    }
+
+    /**
+     * The visitor of the edges of one vertex, used by forEachOut and forEachIn instead of the lists of the Edge objects.
+     */
+    interface EdgeVisitor {
+        /**
+         * @param other The id of the other vertex of the edge.
+         * @param weight The weight of the edge as the long number, the same as IndexedAdjacency.weightAsLong.
+         * @param bandwidth The bandwidth of the W_and_B edge, or Integer.MAX_VALUE for the other weights.
+         */
+        void visit(int other, long weight, int bandwidth);
+    }
+
+    /**
+     * The interface used to store the weights of the edges in primitive long arrays.
+     * @param <E> The type of the weight of the edge.
+     */
+    interface WeightCodec<E> {
+        /**
+         * @param weight The weight of the edge, not null.
+         * @return The bits representing the weight.
+         */
+        long encode(E weight);
+
+        /**
+         * @param bits The bits created by encode.
+         * @return The weight of the edge.
+         */
+        E decode(long bits);
+
+        /**
+         * @param bits The bits created by encode.
+         * @return The weight as the long number, used to sum the weights of the paths and the cycles.
+         */
+        long toLong(long bits);
+
+        /**
+         * @param bits The bits created by encode.
+         * @return The bandwidth of the edge, Integer.MAX_VALUE if the weight has none.
+         */
+        int bandwidth(long bits);
+
+        WeightCodec<Integer> INT = new WeightCodec<Integer>() {
+            public long encode(Integer weight) { return weight; }
+            public Integer decode(long bits) { return (int) bits; }
+            public long toLong(long bits) { return bits; }
+            public int bandwidth(long bits) { return Integer.MAX_VALUE; }
+        };
+
+        WeightCodec<Long> LONG = new WeightCodec<Long>() {
+            public long encode(Long weight) { return weight; }
+            public Long decode(long bits) { return bits; }
+            public long toLong(long bits) { return bits; }
+            public int bandwidth(long bits) { return Integer.MAX_VALUE; }
+        };
+
+        WeightCodec<Double> DOUBLE = new WeightCodec<Double>() {
+            public long encode(Double weight) { return Double.doubleToRawLongBits(weight); }
+            public Double decode(long bits) { return Double.longBitsToDouble(bits); }
+            public long toLong(long bits) { return Math.round(Double.longBitsToDouble(bits)); }
+            public int bandwidth(long bits) { return Integer.MAX_VALUE; }
+        };
+
+        /**
+         * Packs the weight into the high half and the bandwidth into the low half of the long.
+         */
+        WeightCodec<W_and_B> W_AND_B = new WeightCodec<W_and_B>() {
+            public long encode(W_and_B weight) { return W_and_B.bits(weight.weight, weight.bandwidth); }
+            public W_and_B decode(long bits) { return new W_and_B((int) (bits >> 32), (int) bits); }
+            public long toLong(long bits) { return bits >> 32; }
+            public int bandwidth(long bits) { return (int) bits; }
+        };
+    }
+
+    /**
+     * The interface used to store the values of the vertices as bytes in the files.
+     * @param <T> The type of the value of the vertex.
+     */
+    interface ValueCodec<T> {
+        /**
+         * @param value The value of the vertex.
+         * @return The bytes representing the value.
+         */
+        byte[] encode(T value);
+
+        /**
+         * @param bytes The bytes created by encode.
+         * @return The value of the vertex.
+         */
+        T decode(byte[] bytes);
+
+        ValueCodec<String> STRING = new ValueCodec<String>() {
+            public byte[] encode(String value) { return value.getBytes(StandardCharsets.UTF_8); }
+            public String decode(byte[] bytes) { return new String(bytes, StandardCharsets.UTF_8); }
+        };
+
+        ValueCodec<Integer> INT = new ValueCodec<Integer>() {
+            public byte[] encode(Integer value) { return ByteBuffer.allocate(4).putInt(value).array(); }
+            public Integer decode(byte[] bytes) { return ByteBuffer.wrap(bytes).getInt(); }
+        };
+    }
+
+    /**
+     * The primitive access to the outgoing edges of the graph by the indices of the vertices, used by the algorithms
+     * which should not create the Vertex and Edge objects.
+     * The edges of the vertex are visited by their positions: nextEdge(v, -1) gives the first one.
+     */
+    interface IndexedAdjacency {
+        /**
+         * @return The bound of the indices of the vertices, the indices are from 0 to slots() - 1.
+         */
+        int slots();
+
+        /**
+         * @return true if there is a vertex with the given index.
+         */
+        boolean isLive(int v);
+
+        /**
+         * @param v The index of the vertex from which the edges begin.
+         * @param pos The position of the previous edge, or -1.
+         * @return The position of the next edge from the vertex, or -1 if there are no more edges.
+         */
+        int nextEdge(int v, int pos);
+
+        /**
+         * @return The index of the vertex at which the edge at the given position ends.
+         */
+        int target(int v, int pos);
+
+        /**
+         * @return The weight of the edge at the given position as the long number.
+         */
+        long weightAsLong(int v, int pos);
+
+        /**
+         * Visits all the edges from the vertex in the order of nextEdge, the same as Graph.forEachOut.
+         */
+        void forEachOut(int v, EdgeVisitor visitor);
     }
 
     /**
@@ -135,7 +305,7 @@ public class Main {
      * @param <T> The type of the value of the vertex.
      * @param <E> The type of the weight of the edge.
      */
-    static class AdjacencyMatrixGraph<T, E> implements Graph<T, E>{
+    static class AdjacencyMatrixGraph<T, E> implements Graph<T, E>, IndexedAdjacency{
 
         HashMap<T, Integer> id; //Hashmapp to get the index of the vertex by its value
         ArrayList<Vertex<T>> val; //The arrays of the vertices
@@ -282,11 +452,8 @@ public class Main {
          */
         @Override
         public Vertex<T> findVertex(T value) {
-            if(id.containsKey(value)){
-                return new Vertex<>(value, id.get(value));
-            } else {
-                return null;
-            }
+            Integer index = id.get(value);
+            return index == null ? null : val.get(index);
         }
 
         /**
@@ -299,14 +466,11 @@ public class Main {
          */
         @Override
         public Edge<E, T> findEdge(T from_value, T to_value) {
-            if(id.containsKey(from_value) && id.containsKey(to_value)) {
-                int id1 = id.get(from_value);
-                int id2 = id.get(to_value);
-                Vertex<T> from = new Vertex<>(from_value, id1);
-                Vertex<T> to = new Vertex<>(to_value, id2);
+            Integer id1 = id.get(from_value), id2 = id.get(to_value);
+            if(id1 != null && id2 != null) {
                 E w = adjacencyMatrix.get(id1).get(id2);
                 if (w != null) {
-                    return new Edge<>(from, to, w);
+                    return new Edge<>(val.get(id1), val.get(id2), w);
                 }
             }
             return null;
@@ -329,57 +493,82 @@ public class Main {
 
         /**
          * Rerturns arrayList of the vertices which complete the cycle, or null is there is no cycle.
-         * Tp find a cycle, it starts the dfs from any unchecked vertex.
+         * The cycle is found by CycleFinder, which goes through the vertices and the edges in the order of their indices,
+         * so the colors of the vertices are not touched.
          * @return The array of the vertices which make up a cycle or null.
          */
         ArrayList<Vertex<T>> isAcyclic(){
-            for(int i = 0; i < id.size(); i++){
-                val.get(i).setColor(0);
+            CycleFinder finder = new CycleFinder();
+            if(!finder.find(this)) return null;
+            ArrayList<Vertex<T>> answer = new ArrayList<>(finder.cycleLength);
+            for(int i = 0; i < finder.cycleLength; i++){
+                answer.add(val.get(finder.cycle[i]));
             }
-            for(int i = 0; i < id.size(); i++) {
-                if(val.get(i).color == 0) {
-                    ArrayList<Vertex<T>> answer = getCycle(val.get(i), new ArrayList<>());
-                    if(answer != null) return answer;
-                }
+            return answer;
+        }
+
+        @Override
+        public void forEachOut(int vertexId, EdgeVisitor visitor) {
+            ArrayList<E> row = adjacencyMatrix.get(vertexId);
+            for(int i = 0; i < row.size(); i++){
+                E w = row.get(i);
+                if(w != null) visitor.visit(i, toLong(w), bandwidth(w));
+            }
+        }
+
+        @Override
+        public void forEachIn(int vertexId, EdgeVisitor visitor) {
+            for(int i = 0; i < adjacencyMatrix.size(); i++){
+                E w = adjacencyMatrix.get(i).get(vertexId);
+                if(w != null) visitor.visit(i, toLong(w), bandwidth(w));
             }
-            return null;
         }
 
         /**
-         * The DFS looking for the cycle, if the vertex of the color 1 leads to the vertex of the color 1 as well, the cycle is found.
-         * The DFS contains the current path as well, and if it finds the cycle, it returns the part of the path which contains the cycle/
-         * @param vertex The vertex being checked.
-         * @param currentPath The current path of vertices.
-         * @return The found cycle or null if it does not exist.
-         */
-        ArrayList<Vertex<T>> getCycle(Vertex<T> vertex, ArrayList<Vertex<T>> currentPath){
-            currentPath.add(vertex);
-            int index = vertex.id;
-            vertex.setColor(1);
-            for (int i = 0; i < id.size(); i++){
-                if(adjacencyMatrix.get(index).get(i) != null){
-                    Vertex<T> currentVertex = val.get(i);
-                    if(currentVertex.color == 1){
-                        ArrayList<Vertex<T>> answer = new ArrayList<>();
-                        boolean metCurrent = false;
-                        for(Vertex<T> cur : currentPath){
-                            if(cur.id == currentVertex.id){
-                                metCurrent = true;
-                            }
-                            if(metCurrent){
-                                answer.add(cur);
-                            }
-                        }
-                        return answer;
-                    } else if(currentVertex.color == 0){
-                        ArrayList<Vertex<T>> answer = getCycle(currentVertex, currentPath);
-                        if (answer != null) return answer;
-                    }
-                }
+         * @return The weight as the long number: the number itself, rounded if needed, or the weight of W_and_B.
+         * The weights which are not numbers count as 0, so the cycles are found in any graph.
+         */
+        static long toLong(Object weight){
+            if(weight instanceof W_and_B) return ((W_and_B) weight).weight;
+            if(weight instanceof Double || weight instanceof Float) return Math.round(((Number) weight).doubleValue());
+            if(weight instanceof Number) return ((Number) weight).longValue();
+            return 0;
+        }
+
+        /**
+         * @return The bandwidth of the W_and_B weight, Integer.MAX_VALUE for the other weights.
+         */
+        static int bandwidth(Object weight){
+            return weight instanceof W_and_B ? ((W_and_B) weight).bandwidth : Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int slots() {
+            return val.size();
+        }
+
+        @Override
+        public boolean isLive(int v) {
+            return v < val.size();
+        }
+
+        @Override
+        public int nextEdge(int v, int pos) {
+            ArrayList<E> row = adjacencyMatrix.get(v);
+            for(int i = pos + 1; i < row.size(); i++){
+                if(row.get(i) != null) return i;
             }
-            vertex.setColor(2);
-            currentPath.remove(currentPath.size() - 1);
-            return null;
+            return -1;
+        }
+
+        @Override
+        public int target(int v, int pos) {
+            return pos;
+        }
+
+        @Override
+        public long weightAsLong(int v, int pos) {
+            return toLong(adjacencyMatrix.get(v).get(pos));
         }
 
         /**
@@ -396,186 +585,7483 @@ public class Main {
         }
     }
 
-
-
-
-    FastScanner in;
-    PrintWriter out;
-
     /**
-     * Checks all the methods of graph interface by answering requests in the file.
-     * @throws IOException
+     * The implementation of the graph interface using one flat adjacency matrix.
+     * The presence of the edges is kept in a bitset, the weights are kept by the subclasses in one primitive array.
+     * Both grow geometrically, so adding a vertex does not touch the other rows.
+     *
+     * In the tombstone mode a removed vertex only frees its slot, which is reused by the next added vertex.
+     * The edges of the freed slot are ignored through the bitset of the live slots and cleared when the slot is reused.
+     * When the share of the free slots crosses the threshold, the matrix is compacted.
+     * The vertices returned by the graph are updated in place, so they stay valid after the compaction.
+     *
+     * The graph can also maintain its topological order under the insertions of the edges, see IncrementalTopologicalOrder.
+     * @param <T> The type of the value of the vertex.
+     * @param <E> The type of the weight of the edge.
      */
-    private void solveA() throws Exception {
-        AdjacencyMatrixGraph<String, Integer> graph = new AdjacencyMatrixGraph<>();
-        while(in.hasNext()){
-            String instruction = in.next();
-            switch (instruction){
-                case ("ADD_VERTEX"):
-                    graph.addVertex(in.next());
-                    break;
-                case ("REMOVE_VERTEX"):
-                    graph.removeVertex(graph.findVertex(in.next()));
-                    break;
-                case ("ADD_EDGE"):
-                    String name1 = in.next(), name2 = in.next();
-                    graph.addEdge(graph.findVertex(name1), graph.findVertex(name2), in.nextInt());
-                    break;
-                case ("REMOVE_EDGE"):
-                    Edge<Integer, String> edge = graph.findEdge(in.next(), in.next());
-                    graph.removeEdge(edge);
-                    break;
-                case ("HAS_EDGE"):
-                    if(graph.hasEdge(graph.findVertex(in.next()), graph.findVertex(in.next()))){
-                        out.println("TRUE");
-                    } else {
-                        out.println("FALSE");
-                    }
-                    break;
-                case ("IS_ACYCLIC"):
-                    ArrayList<Vertex<String>> answer = graph.isAcyclic();
-                    if(answer == null) {
-                        out.println("ACYCLIC");
-                    } else {
-                        int weight = 0;
-                        int n = answer.size();
-                        for(int i = 0; i < n; i++){
-                            weight += graph.findEdge(answer.get(i).value, answer.get((i + 1)%n).value).weight;
-                        }
-                        out.print(weight + " ");
-                        for (Vertex<String> stringVertex : answer) {
-                            out.print(stringVertex.value + " ");
-                        }
-                        out.println();
-                    }
-                    break;
-                case ("TRANSPOSE"):
-                    graph.transpose();
-                    break;
-            }
+    static abstract class FlatMatrixGraph<T, E> implements Graph<T, E>, IndexedAdjacency{
+        static final int MAX_CAPACITY = 46340; //The most vertices whose matrix of weights fits into one array
+
+        HashMap<T, Integer> id; //Hashmap to get the index of the vertex by its value
+        ArrayList<Vertex<T>> val; //The arrays of the vertices
+        int capacity; //The number of columns reserved in every row of the matrix
+        int rowWords; //The number of longs reserved for every row of the bitset
+        long[] present; //The bitset which marks the existing edges
+        long[] live; //The bitset which marks the slots occupied by the vertices
+        boolean tombstones; //If true, the removed vertices leave free slots instead of shifting the matrix
+        double compactionThreshold; //The share of the free slots at which the matrix is compacted
+        int[] freeSlots; //The stack of the free slots
+        int freeCount; //The number of the free slots
+        IncrementalTopologicalOrder topology; //The maintained topological order, or null
+        TransitiveClosure closure; //The maintained transitive closure, or null
+        ReachabilitySearch search; //The search used by isReachable when the closure is not maintained
+        boolean transposed; //If true, the row of the matrix stores the edges to the vertex instead of the edges from it
+
+        /**
+         * Initializes all the structures.
+         * @param initialCapacity The number of vertices the matrix can hold before growing.
+         */
+        FlatMatrixGraph(int initialCapacity) {
+            id = new HashMap<>();
+            val = new ArrayList<>();
+            capacity = Math.max(initialCapacity, 1);
+            allocateWeights(capacity);
+            rowWords = (capacity + 63) >>> 6;
+            present = new long[capacity * rowWords];
+            live = new long[rowWords];
+            freeSlots = new int[4];
+            compactionThreshold = 0.5;
         }
 
-    }
+        /**
+         * Turns on the tombstone mode of the vertex removal.
+         * @param threshold The share of the free slots at which the matrix is compacted, 1 or more to compact only by the explicit call.
+         */
+        void useTombstones(double threshold){
+            tombstones = true;
+            compactionThreshold = threshold;
+        }
 
-    /**
-     * Implements Dijkstra's algorithm on the AdjacencyMatrixGraph.
-     * The algorithm is expanded in order to satisfy the conditions of the minimum bandwidth for the shortest path, which is stored in pair with the weight of the edge as the edge's total weight value.
-     * All the edges with the bandwidth lesser than the required minimum one are not taken into consideration while computing the algorithm.
-     * @throws IOException
-     */
-    private void solveB() throws Exception {
-        int n = in.nextInt(), m = in.nextInt();
-        AdjacencyMatrixGraph<Integer, W_and_B> graph = new AdjacencyMatrixGraph<>();
-        for (int i = 0; i < n; i++) {
-            graph.addVertex(i);
+        /**
+         * Turns on the maintenance of the topological order, so that the cycle is detected when the edge closing it is added.
+         */
+        void trackTopologicalOrder(){
+            topology = new IncrementalTopologicalOrder(this);
+            topology.hasCycle();
         }
-        for(int i = 0; i < m; i++){
-            int v = in.nextInt() - 1, u = in.nextInt() - 1;
-            int weight = in.nextInt(), bandwidth = in.nextInt();
-            graph.addEdge(graph.findVertex(v), graph.findVertex(u), new W_and_B(weight, bandwidth));
+
+        /**
+         * Turns on the maintenance of the transitive closure, so that isReachable is answered by one bit.
+         */
+        void trackTransitiveClosure(){
+            closure = new TransitiveClosure(this);
         }
-        int startVertex = in.nextInt() - 1, finishVertex = in.nextInt() - 1, minBandwidth = in.nextInt();
-        int[] pathValues = new int[n];
-        int[] minBandWidthValues = new int[n];
-        int[] prevVertices = new int[n];
-        boolean[] isRelaxed = new boolean[n];
-        for(int i = 0; i < n; i++){
-            pathValues[i] = (int) 1e9;
-            minBandWidthValues[i] = (int) 1e9;
-            prevVertices[i] = -1;
+
+        /**
+         * Tells if there is the path from one vertex to the other, every vertex is reachable from itself.
+         * The maintained closure is used if it is turned on, otherwise the breadth-first search is run.
+         * @param from The index of the vertex at which the path begins.
+         * @param to The index of the vertex at which the path ends.
+         */
+        boolean isReachable(int from, int to){
+            if(closure != null) return closure.reachable(from, to);
+            if(search == null) search = new ReachabilitySearch();
+            return search.reachable(this, from, to);
         }
-        pathValues[startVertex] = 0;
-        boolean didRelax = true;
-        for(int i = 0; i < n; i++){
-            int minId = -1;
-            for(int j = 0; j < n; j++) {
-                if (!isRelaxed[j] && (minId == -1 || pathValues[j] < pathValues[minId])) {
-                    minId = j;
-                }
-            }
-            Vertex<Integer> currentVertex = graph.findVertex(minId);
-            for(Edge<W_and_B, Integer> currentEdge : graph.edgesFrom(currentVertex)){
-                if(currentEdge.weight.bandwidth >= minBandwidth && pathValues[minId] + currentEdge.weight.weight < pathValues[currentEdge.to.id]){
-                    pathValues[currentEdge.to.id] = pathValues[minId] + currentEdge.weight.weight;
-                    minBandWidthValues[currentEdge.to.id] = Math.min(minBandWidthValues[minId], currentEdge.weight.bandwidth);
-                    prevVertices[currentEdge.to.id] = minId;
-                }
+
+        /**
+         * Allocates the weight array for the matrix of the given capacity, copying the weights of the existing vertices.
+         * @param newCapacity The new number of columns in every row.
+         */
+        abstract void allocateWeights(int newCapacity);
+
+        /**
+         * @return The number of the cells of the matrix of the given capacity.
+         * @throws IllegalStateException If the matrix is larger than the array can be.
+         */
+        static int cells(int capacity){
+            long cells = (long) capacity * capacity;
+            if(cells > Integer.MAX_VALUE){
+                throw new IllegalStateException("The matrix of " + capacity + " vertices is too large, at most " + MAX_CAPACITY + " fit!");
             }
-            isRelaxed[minId] = true;
+            return (int) cells;
         }
-        if(pathValues[finishVertex] == (int)1e9){
-            out.print("IMPOSSIBLE");
-        } else {
-            ArrayList<Integer> path = new ArrayList<>();
-            int curVertex = finishVertex;
-            path.add(curVertex + 1);
-            while (curVertex != startVertex){
-                curVertex = prevVertices[curVertex];
-                path.add(curVertex + 1);
-            }
-            out.println(path.size() + " " + pathValues[finishVertex] + " " + minBandWidthValues[finishVertex]);
-            for(int i = path.size() - 1; i >= 0; i--){
-                out.print(path.get(i) + " ");
-            }
+
+        /**
+         * @param cell The index of the cell in the flat matrix.
+         * @return The weight stored in the cell.
+         */
+        abstract E weightAt(int cell);
+
+        /**
+         * Stores the weight to the cell.
+         * @param cell The index of the cell in the flat matrix.
+         * @param weight The weight, not null.
+         */
+        abstract void setWeight(int cell, E weight);
+
+        /**
+         * Copies the weight from one cell to the other.
+         */
+        abstract void copyWeight(int fromCell, int toCell);
+
+        /**
+         * Swaps the weights of two cells.
+         */
+        abstract void swapWeights(int cell1, int cell2);
+
+        /**
+         * @param cell The index of the cell in the flat matrix.
+         * @return The weight stored in the cell as the long number, the double weights are rounded.
+         */
+        abstract long weightBits(int cell);
+
+        /**
+         * @return The number of the vertices in the graph.
+         */
+        int size(){
+            return id.size();
         }
-    }
 
-    static class FastScanner {
-        StringTokenizer st;
-        BufferedReader br;
-        FastScanner(InputStream s) {
-            br = new BufferedReader(new InputStreamReader(s));
+        /**
+         * @return The number of the slots in the matrix, including the free ones.
+         */
+        @Override
+        public int slots(){
+            return val.size();
         }
-        String next() throws IOException {
-            while (st == null || !st.hasMoreTokens())
-                st = new StringTokenizer(br.readLine());
-            return st.nextToken();
+
+        @Override
+        public boolean isLive(int slot){
+            return (live[slot >>> 6] & (1L << slot)) != 0;
         }
 
-        String thisLine() throws IOException{
-            while (st == null || !st.hasMoreTokens())
-                st = new StringTokenizer(br.readLine());
-            StringBuilder ans = new StringBuilder();
-            while (st.hasMoreTokens()){
-                ans.append(st.nextToken());
-                ans.append(" ");
-            }
-            ans.deleteCharAt(ans.length() - 1);
-            return ans.toString();
+        /**
+         * @return The index of the cell of the edge in the flat matrix, taking the transposition into account.
+         */
+        int cell(int from, int to){
+            return transposed ? to * capacity + from : from * capacity + to;
         }
 
-        boolean hasNext() throws IOException {
-            return br.ready() || (st != null && st.hasMoreTokens());
+        boolean isSet(int from, int to){
+            return transposed ? rawIsSet(to, from) : rawIsSet(from, to);
         }
-        int nextInt() throws IOException {
-            return Integer.parseInt(next());
+
+        void setBit(int from, int to, boolean value){
+            if(transposed){
+                rawSetBit(to, from, value);
+            } else {
+                rawSetBit(from, to, value);
+            }
         }
-        long nextLong() throws IOException {
-            return Long.parseLong(next());
+
+        /**
+         * The index of the cell in the given row and column of the stored matrix, used to move the rows and the columns.
+         */
+        int rawCell(int row, int column){
+            return row * capacity + column;
         }
-        double nextDouble() throws IOException {
-            return Double.parseDouble(next());
+
+        boolean rawIsSet(int row, int column){
+            return (present[row * rowWords + (column >>> 6)] & (1L << column)) != 0;
         }
 
-        double nextDollarDouble() throws IOException {
-            return Double.parseDouble(next().substring(1));
+        void rawSetBit(int row, int column, boolean value){
+            if(value){
+                present[row * rowWords + (column >>> 6)] |= 1L << column;
+            } else {
+                present[row * rowWords + (column >>> 6)] &= ~(1L << column);
+            }
         }
 
-        String nextLine() throws IOException {
-            return br.readLine();
+        /**
+         * Marks the new edge in the bitset and updates the topological order.
+         */
+        void connect(int from, int to){
+            setBit(from, to, true);
+            if(topology != null) topology.edgeAdded(from, to);
+            if(closure != null) closure.edgeAdded(from, to);
         }
-        boolean hasNextLine() throws IOException {
-            return br.ready();
+
+        /**
+         * Clears the edge in the bitset and updates the topological order.
+         */
+        void disconnect(int from, int to){
+            setBit(from, to, false);
+            if(topology != null) topology.edgeRemoved(from, to);
+            if(closure != null) closure.invalidate();
         }
-    }
 
-    private void run() throws Exception {
-        //in = new FastScanner(new FileInputStream("input.txt"));
+        /**
+         * Returns the index of the next vertex reachable by an edge from the given vertex, starting at the given index.
+         * @param from The index of the vertex from which the edges begin.
+         * @param start The first index to check.
+         * @return The index of the next vertex or -1 if there are no more edges.
+         */
+        int nextTarget(int from, int start){
+            return transposed ? nextInColumn(from, start) : nextInRow(from, start);
+        }
+
+        /**
+         * Returns the index of the next vertex from which an edge leads to the given vertex, starting at the given index.
+         * @param to The index of the vertex at which the edges end.
+         * @param start The first index to check.
+         * @return The index of the next vertex or -1 if there are no more edges.
+         */
+        int nextSource(int to, int start){
+            return transposed ? nextInRow(to, start) : nextInColumn(to, start);
+        }
+
+        /**
+         * @return The next live row with the set bit in the stored column, or -1.
+         */
+        int nextInColumn(int column, int start){
+            for(int row = start; row < val.size(); row++){
+                if(rawIsSet(row, column) && isLive(row)) return row;
+            }
+            return -1;
+        }
+
+        /**
+         * @return The next live column with the set bit in the stored row, or -1.
+         */
+        int nextInRow(int row, int start){
+            int n = val.size();
+            if(start >= n) return -1;
+            int base = row * rowWords;
+            int word = start >>> 6;
+            long bits = present[base + word] & live[word] & (-1L << start);
+            while(true){
+                if(bits != 0){
+                    int to = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    return to < n ? to : -1;
+                }
+                if(++word >= rowWords || (word << 6) >= n) return -1;
+                bits = present[base + word] & live[word];
+            }
+        }
+
+        /**
+         * Grows the matrix geometrically so that it can hold at least the given number of vertices.
+         * Every row is copied once into the new arrays. The matrix holds at most MAX_CAPACITY vertices.
+         * @param needed The number of vertices that must fit.
+         */
+        void ensureCapacity(int needed){
+            if(needed <= capacity) return;
+            int newCapacity = Math.max(needed, (int) Math.min(capacity * 2L, MAX_CAPACITY));
+            cells(newCapacity); //Fails before anything is changed if the matrix is too large
+            int newRowWords = (newCapacity + 63) >>> 6;
+            long[] newPresent = new long[newCapacity * newRowWords];
+            for(int i = 0; i < val.size(); i++){
+                System.arraycopy(present, i * rowWords, newPresent, i * newRowWords, rowWords);
+            }
+            allocateWeights(newCapacity);
+            present = newPresent;
+            live = Arrays.copyOf(live, newRowWords);
+            rowWords = newRowWords;
+            capacity = newCapacity;
+        }
+
+        /**
+         * Adds the vertex. If the vertex with such value already exists, it is returned.
+         * The new vertex takes a free slot, whose old edges are cleared, or the next slot, whose row and column are already empty.
+         * @param value The value of the vertex
+         * @return The vertex with the given value.
+         */
+        @Override
+        public Vertex<T> addVertex(T value) {
+            Integer existing = id.get(value);
+            if(existing != null){
+                return val.get(existing);
+            }
+            int index;
+            if(freeCount > 0){
+                index = freeSlots[--freeCount];
+                clearSlot(index);
+            } else {
+                index = val.size();
+                ensureCapacity(index + 1);
+                val.add(null);
+            }
+            Vertex<T> v = new Vertex<>(value, index);
+            id.put(value, index);
+            val.set(index, v);
+            live[index >>> 6] |= 1L << index;
+            if(topology != null) topology.vertexAdded(index);
+            if(closure != null) closure.vertexAdded(index);
+            return v;
+        }
+
+        /**
+         * Clears the row and the column of the slot.
+         */
+        void clearSlot(int slot){
+            Arrays.fill(present, slot * rowWords, (slot + 1) * rowWords, 0L);
+            for(int i = 0; i < val.size(); i++){
+                rawSetBit(i, slot, false);
+            }
+        }
+
+        /**
+         * Removes the given vertex from the graph.
+         * The rows after the removed one are moved one row up, and in every row the columns after the removed one are moved one column left.
+         * After that the vertices with the index greater than the deleted one get their index reduced by one.
+         * @param v The given vertex.
+         */
+        @Override
+        public void removeVertex(Vertex<T> v) throws Exception {
+            if(v == null) throw new Exception("Vertix is null!");
+            if(tombstones){
+                removeToSlot(v);
+                return;
+            }
+            int index = v.id;
+            int n = val.size();
+            for(int i = index + 1; i < n; i++){
+                System.arraycopy(present, i * rowWords, present, (i - 1) * rowWords, rowWords);
+                for(int j = 0; j < n; j++){
+                    copyWeight(rawCell(i, j), rawCell(i - 1, j));
+                }
+            }
+            Arrays.fill(present, (n - 1) * rowWords, n * rowWords, 0L);
+            for(int i = 0; i < n - 1; i++){
+                for(int j = index + 1; j < n; j++){
+                    copyWeight(rawCell(i, j), rawCell(i, j - 1));
+                }
+                removeColumnBit(i, index);
+            }
+            id.remove(v.value);
+            val.remove(index);
+            live[(n - 1) >>> 6] &= ~(1L << (n - 1));
+            for(int i = index; i < n - 1; i++){
+                Vertex<T> cur = val.get(i);
+                cur.id = i;
+                id.put(cur.value, i);
+            }
+            if(topology != null) topology.vertexRemoved(index, true);
+            if(closure != null) closure.invalidate();
+        }
+
+        /**
+         * Removes the vertex in the tombstone mode: marks its slot as free and puts it to the stack of the free slots.
+         * The edges of the slot stay in the matrix, but are hidden by the bitset of the live slots.
+         * @param v The given vertex.
+         */
+        void removeToSlot(Vertex<T> v) throws Exception {
+            int index = v.id;
+            if(val.get(index) != v) throw new Exception("The vertex is not in the graph!");
+            id.remove(v.value);
+            val.set(index, null);
+            live[index >>> 6] &= ~(1L << index);
+            if(freeCount == freeSlots.length){
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = index;
+            if(topology != null) topology.vertexRemoved(index, false);
+            if(closure != null) closure.invalidate();
+            if(compactionThreshold < 1 && freeCount >= 64 && freeCount >= compactionThreshold * val.size()){
+                compact();
+            }
+        }
+
+        /**
+         * Moves the live vertices to the first slots keeping their order, and drops the free slots.
+         * The ids of the vertices are updated in place.
+         */
+        void compact(){
+            int n = val.size();
+            int[] newIndex = new int[n];
+            int m = 0;
+            for(int i = 0; i < n; i++){
+                newIndex[i] = val.get(i) == null ? -1 : m++;
+            }
+            for(int i = 0; i < n; i++){
+                int row = newIndex[i];
+                if(row == -1) continue;
+                for(int j = 0; j < n; j++){
+                    int column = newIndex[j];
+                    if(column == -1) continue;
+                    boolean edge = rawIsSet(i, j);
+                    if(edge){
+                        copyWeight(rawCell(i, j), rawCell(row, column));
+                    }
+                    if(row != i || column != j) rawSetBit(row, column, edge);
+                }
+            }
+            Arrays.fill(present, m * rowWords, n * rowWords, 0L);
+            for(int i = 0; i < m; i++){
+                for(int j = m; j < n; j++){
+                    rawSetBit(i, j, false);
+                }
+            }
+            ArrayList<Vertex<T>> vertices = new ArrayList<>(m);
+            for(Vertex<T> v : val){
+                if(v == null) continue;
+                v.id = vertices.size();
+                id.put(v.value, v.id);
+                vertices.add(v);
+            }
+            val = vertices;
+            Arrays.fill(live, 0L);
+            for(int i = 0; i < m; i++){
+                live[i >>> 6] |= 1L << i;
+            }
+            freeCount = 0;
+            if(topology != null) topology.compacted(newIndex);
+            if(closure != null) closure.invalidate();
+        }
+
+        /**
+         * Removes the bit of the given column from the row, moving all the bits after it one position left.
+         */
+        void removeColumnBit(int row, int column){
+            int base = row * rowWords;
+            int word = column >>> 6;
+            long bits = present[base + word];
+            long low = bits & ((1L << column) - 1);
+            long high = (bits >>> 1) & (-1L << column);
+            present[base + word] = low | high;
+            for(int w = word + 1; w < rowWords; w++){
+                present[base + w - 1] |= present[base + w] << 63;
+                present[base + w] >>>= 1;
+            }
+        }
+
+        /**
+         * Adds a new edge to the graph by storing its weight in the matrix and marking it in the bitset.
+         * The null weight removes the edge.
+         * @param from The vertex from which the edge begins
+         * @param to The vertex at which the edge ends.
+         * @param weight The weight of the edge.
+         * @return The created edge.
+         */
+        @Override
+        public Edge<E, T> addEdge(Vertex<T> from, Vertex<T> to, E weight) throws Exception {
+            if(from == null || to == null) throw new Exception("The vertex is null!");
+            if(weight != null){
+                setWeight(cell(from.id, to.id), weight);
+                connect(from.id, to.id);
+            } else {
+                disconnect(from.id, to.id);
+            }
+            return new Edge<>(from, to, weight);
+        }
+
+        /**
+         * Removes the specified edge by clearing its bit.
+         * @param e The specified edge.
+         */
+        @Override
+        public void removeEdge(Edge<E, T> e) throws Exception {
+            if(e == null) throw new Exception("The edge is null!");
+            disconnect(e.from.id, e.to.id);
+        }
+
+        /**
+         * Gets all the edges from the specified vertex by scanning the row of the bitset.
+         * @param v The specified vertex v
+         * @return ArrayList of the requested edges.
+         */
+        @Override
+        public ArrayList<Edge<E, T>> edgesFrom(Vertex<T> v) throws Exception {
+            if(v == null) throw new Exception("The vertex is null!");
+            int curId = v.id;
+            ArrayList<Edge<E, T>> answer = new ArrayList<>();
+            for(int i = nextTarget(curId, 0); i != -1; i = nextTarget(curId, i + 1)){
+                answer.add(new Edge<>(v, val.get(i), weightAt(cell(curId, i))));
+            }
+            return answer;
+        }
+
+        /**
+         * Gets all the edges to the specified vertex by checking the column of the bitset.
+         * @param v The specified vertex v
+         * @return ArrayList of the requested edges.
+         */
+        @Override
+        public ArrayList<Edge<E, T>> edgesTo(Vertex<T> v) throws Exception {
+            if(v == null) throw new Exception("The vertex is null!");
+            int curId = v.id;
+            ArrayList<Edge<E, T>> answer = new ArrayList<>();
+            for(int i = nextSource(curId, 0); i != -1; i = nextSource(curId, i + 1)){
+                answer.add(new Edge<>(val.get(i), v, weightAt(cell(i, curId))));
+            }
+            return answer;
+        }
+
+        /**
+         * Finds the vertex by the specified value.
+         * @param value The specified value of the vertex
+         * @return The found vertex or null.
+         */
+        @Override
+        public Vertex<T> findVertex(T value) {
+            Integer index = id.get(value);
+            return index == null ? null : val.get(index);
+        }
+
+        /**
+         * Finds the edge between the vertices of the specified values.
+         * @param from_value The value of the vertex from which the egde begins.
+         * @param to_value The value of the vertex at which the edge ends
+         * @return The found edge or null.
+         */
+        @Override
+        public Edge<E, T> findEdge(T from_value, T to_value) {
+            Integer id1 = id.get(from_value), id2 = id.get(to_value);
+            if(id1 != null && id2 != null && isSet(id1, id2)) {
+                return new Edge<>(val.get(id1), val.get(id2), weightAt(cell(id1, id2)));
+            }
+            return null;
+        }
+
+        /**
+         * Checks if there is an edge between the two vertices.
+         * @param v The vertex from which the edge begins.
+         * @param u The vertex at which the edge ends.
+         * @return bool if the edge exists or not
+         */
+        @Override
+        public boolean hasEdge(Vertex<T> v, Vertex<T> u) throws Exception {
+            if(v == null || u == null) throw new Exception("Some vertices are null");
+            return isSet(v.id, u.id);
+        }
+
+        /**
+         * Rerturns arrayList of the vertices which complete the cycle, or null is there is no cycle.
+         * The vertices are checked in the same order as in AdjacencyMatrixGraph, so the same cycle is found.
+         * @return The array of the vertices which make up a cycle or null.
+         */
+        ArrayList<Vertex<T>> isAcyclic(){
+            CycleFinder finder = new CycleFinder();
+            if(!finder.find(this)) return null;
+            ArrayList<Vertex<T>> answer = new ArrayList<>(finder.cycleLength);
+            for(int i = 0; i < finder.cycleLength; i++){
+                answer.add(val.get(finder.cycle[i]));
+            }
+            return answer;
+        }
+
+        @Override
+        public void forEachOut(int vertexId, EdgeVisitor visitor) {
+            for(int i = nextTarget(vertexId, 0); i != -1; i = nextTarget(vertexId, i + 1)){
+                visitor.visit(i, weightBits(cell(vertexId, i)), Integer.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public void forEachIn(int vertexId, EdgeVisitor visitor) {
+            for(int i = nextSource(vertexId, 0); i != -1; i = nextSource(vertexId, i + 1)){
+                visitor.visit(i, weightBits(cell(i, vertexId)), Integer.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public int nextEdge(int v, int pos) {
+            return nextTarget(v, pos + 1);
+        }
+
+        @Override
+        public int target(int v, int pos) {
+            return pos;
+        }
+
+        @Override
+        public long weightAsLong(int v, int pos) {
+            return weightBits(cell(v, pos));
+        }
+
+        /**
+         * Transposes the graph in constant time by flipping the meaning of the rows and the columns of the matrix.
+         */
+        void transpose(){
+            transposed = !transposed;
+            if(topology != null) topology.transposed();
+            if(closure != null) closure.invalidate();
+        }
+
+        /**
+         * Swaps the cells of the matrix and their bits, so that the stored matrix is not transposed anymore.
+         * The matrix is processed by the square blocks, so both blocks of the swapped pair stay in the cache.
+         */
+        void materializeTranspose(){
+            if(!transposed) return;
+            final int block = 64;
+            int n = val.size();
+            for(int bi = 0; bi < n; bi += block){
+                for(int bj = 0; bj <= bi; bj += block){
+                    int iEnd = Math.min(bi + block, n), jEnd = Math.min(bj + block, n);
+                    for(int i = bi; i < iEnd; i++){
+                        for(int j = bj; j < Math.min(jEnd, i); j++){
+                            boolean b1 = rawIsSet(i, j), b2 = rawIsSet(j, i);
+                            if(b1 || b2){
+                                swapWeights(rawCell(i, j), rawCell(j, i));
+                                rawSetBit(i, j, b2);
+                                rawSetBit(j, i, b1);
+                            }
+                        }
+                    }
+                }
+            }
+            transposed = false;
+        }
+    }
+
+    /**
+     * The flat matrix graph with int weights.
+     * @param <T> The type of the value of the vertex.
+     */
+    static class IntMatrixGraph<T> extends FlatMatrixGraph<T, Integer>{
+        int[] weights; //The weights of the edges, row by row
+
+        IntMatrixGraph() {
+            this(16);
+        }
+
+        IntMatrixGraph(int initialCapacity) {
+            super(initialCapacity);
+        }
+
+        @Override
+        void allocateWeights(int newCapacity) {
+            int[] newWeights = new int[cells(newCapacity)];
+            for(int i = 0; i < slots(); i++){
+                System.arraycopy(weights, i * capacity, newWeights, i * newCapacity, slots());
+            }
+            weights = newWeights;
+        }
+
+        @Override
+        Integer weightAt(int cell) {
+            return weights[cell];
+        }
+
+        @Override
+        void setWeight(int cell, Integer weight) {
+            weights[cell] = weight;
+        }
+
+        @Override
+        void copyWeight(int fromCell, int toCell) {
+            weights[toCell] = weights[fromCell];
+        }
+
+        @Override
+        long weightBits(int cell) {
+            return weights[cell];
+        }
+
+        @Override
+        void swapWeights(int cell1, int cell2) {
+            int w = weights[cell1];
+            weights[cell1] = weights[cell2];
+            weights[cell2] = w;
+        }
+
+        /**
+         * Adds the edge between the vertices with the given indices without creating any objects.
+         */
+        void addEdge(int from, int to, int weight){
+            weights[cell(from, to)] = weight;
+            connect(from, to);
+        }
+
+        /**
+         * @return The weight of the edge between the vertices with the given indices, the edge must exist.
+         */
+        int weight(int from, int to){
+            return weights[cell(from, to)];
+        }
+    }
+
+    /**
+     * The flat matrix graph with long weights.
+     * @param <T> The type of the value of the vertex.
+     */
+    static class LongMatrixGraph<T> extends FlatMatrixGraph<T, Long>{
+        long[] weights; //The weights of the edges, row by row
+
+        LongMatrixGraph() {
+            this(16);
+        }
+
+        LongMatrixGraph(int initialCapacity) {
+            super(initialCapacity);
+        }
+
+        @Override
+        void allocateWeights(int newCapacity) {
+            long[] newWeights = new long[cells(newCapacity)];
+            for(int i = 0; i < slots(); i++){
+                System.arraycopy(weights, i * capacity, newWeights, i * newCapacity, slots());
+            }
+            weights = newWeights;
+        }
+
+        @Override
+        Long weightAt(int cell) {
+            return weights[cell];
+        }
+
+        @Override
+        void setWeight(int cell, Long weight) {
+            weights[cell] = weight;
+        }
+
+        @Override
+        void copyWeight(int fromCell, int toCell) {
+            weights[toCell] = weights[fromCell];
+        }
+
+        @Override
+        long weightBits(int cell) {
+            return weights[cell];
+        }
+
+        @Override
+        void swapWeights(int cell1, int cell2) {
+            long w = weights[cell1];
+            weights[cell1] = weights[cell2];
+            weights[cell2] = w;
+        }
+
+        void addEdge(int from, int to, long weight){
+            weights[cell(from, to)] = weight;
+            connect(from, to);
+        }
+
+        long weight(int from, int to){
+            return weights[cell(from, to)];
+        }
+    }
+
+    /**
+     * The flat matrix graph with double weights.
+     * @param <T> The type of the value of the vertex.
+     */
+    static class DoubleMatrixGraph<T> extends FlatMatrixGraph<T, Double>{
+        double[] weights; //The weights of the edges, row by row
+
+        DoubleMatrixGraph() {
+            this(16);
+        }
+
+        DoubleMatrixGraph(int initialCapacity) {
+            super(initialCapacity);
+        }
+
+        @Override
+        void allocateWeights(int newCapacity) {
+            double[] newWeights = new double[cells(newCapacity)];
+            for(int i = 0; i < slots(); i++){
+                System.arraycopy(weights, i * capacity, newWeights, i * newCapacity, slots());
+            }
+            weights = newWeights;
+        }
+
+        @Override
+        Double weightAt(int cell) {
+            return weights[cell];
+        }
+
+        @Override
+        void setWeight(int cell, Double weight) {
+            weights[cell] = weight;
+        }
+
+        @Override
+        void copyWeight(int fromCell, int toCell) {
+            weights[toCell] = weights[fromCell];
+        }
+
+        @Override
+        long weightBits(int cell) {
+            return Math.round(weights[cell]);
+        }
+
+        @Override
+        void swapWeights(int cell1, int cell2) {
+            double w = weights[cell1];
+            weights[cell1] = weights[cell2];
+            weights[cell2] = w;
+        }
+
+        void addEdge(int from, int to, double weight){
+            weights[cell(from, to)] = weight;
+            connect(from, to);
+        }
+
+        double weight(int from, int to){
+            return weights[cell(from, to)];
+        }
+    }
+
+    /**
+     * The implementation of the graph interface using adjacency lists, for the graphs with few edges per vertex.
+     * Every vertex keeps the lists of its outgoing and incoming edges, so edgesFrom and edgesTo take time proportional to the degree.
+     * The weights are stored as the bits given by the WeightCodec.
+     * When the graph is built, it can be frozen into the immutable CsrGraph.
+     * @param <T> The type of the value of the vertex.
+     * @param <E> The type of the weight of the edge.
+     */
+    static class SparseGraph<T, E> implements Graph<T, E>, IndexedAdjacency{
+
+        WeightCodec<E> codec; //Converts the weights to the primitive bits and back
+        HashMap<T, Integer> id; //Hashmap to get the index of the vertex by its value
+        ArrayList<Vertex<T>> val; //The arrays of the vertices
+        int[][] outTargets, inSources; //The adjacency lists of the vertices
+        long[][] outWeights, inWeights; //The weights of the edges in the adjacency lists
+        int[] outDegree, inDegree; //The lengths of the adjacency lists
+        int edgeCount; //The number of the edges in the graph
+
+        /**
+         * Initializes all the structures.
+         * @param codec The codec of the weights.
+         */
+        SparseGraph(WeightCodec<E> codec) {
+            this(codec, 16);
+        }
+
+        /**
+         * Initializes all the structures for the expected number of vertices.
+         * @param codec The codec of the weights.
+         * @param expectedVertices The number of vertices the lists are reserved for.
+         */
+        SparseGraph(WeightCodec<E> codec, int expectedVertices) {
+            this.codec = codec;
+            int cap = Math.max(expectedVertices, 1);
+            id = new HashMap<>(cap * 2);
+            val = new ArrayList<>(cap);
+            outTargets = new int[cap][];
+            inSources = new int[cap][];
+            outWeights = new long[cap][];
+            inWeights = new long[cap][];
+            outDegree = new int[cap];
+            inDegree = new int[cap];
+        }
+
+        /**
+         * @return The number of the vertices in the graph.
+         */
+        int size(){
+            return val.size();
+        }
+
+        /**
+         * Adds the vertex. If the vertex with such value already exists, it is returned.
+         * @param value The value of the vertex
+         * @return The vertex with the given value.
+         */
+        @Override
+        public Vertex<T> addVertex(T value) {
+            Integer existing = id.get(value);
+            if(existing != null){
+                return val.get(existing);
+            }
+            int index = val.size();
+            if(index == outDegree.length){
+                int cap = index * 2;
+                outTargets = Arrays.copyOf(outTargets, cap);
+                inSources = Arrays.copyOf(inSources, cap);
+                outWeights = Arrays.copyOf(outWeights, cap);
+                inWeights = Arrays.copyOf(inWeights, cap);
+                outDegree = Arrays.copyOf(outDegree, cap);
+                inDegree = Arrays.copyOf(inDegree, cap);
+            }
+            outTargets[index] = new int[2];
+            inSources[index] = new int[2];
+            outWeights[index] = new long[2];
+            inWeights[index] = new long[2];
+            Vertex<T> v = new Vertex<>(value, index);
+            id.put(value, index);
+            val.add(v);
+            return v;
+        }
+
+        /**
+         * Removes the given vertex from the graph.
+         * Its edges are removed from the lists of its neighbours, then the vertices after it are moved one index down
+         * and all the lists are renumbered, so the indices stay the same as in the matrix graphs.
+         * @param v The given vertex.
+         */
+        @Override
+        public void removeVertex(Vertex<T> v) throws Exception {
+            if(v == null) throw new Exception("Vertix is null!");
+            if(!contains(v)) throw new Exception("The vertex is not in the graph!");
+            int index = v.id;
+            for(int k = 0; k < outDegree[index]; k++){
+                int to = outTargets[index][k];
+                if(to != index) removeFromList(inSources, inWeights, inDegree, to, index);
+            }
+            for(int k = 0; k < inDegree[index]; k++){
+                int from = inSources[index][k];
+                if(from != index) removeFromList(outTargets, outWeights, outDegree, from, index);
+            }
+            edgeCount -= outDegree[index] + inDegree[index];
+            if(findInList(outTargets[index], outDegree[index], index) != -1) edgeCount++;
+            int n = val.size();
+            shiftDown(outTargets, index, n);
+            shiftDown(inSources, index, n);
+            shiftDown(outWeights, index, n);
+            shiftDown(inWeights, index, n);
+            System.arraycopy(outDegree, index + 1, outDegree, index, n - index - 1);
+            System.arraycopy(inDegree, index + 1, inDegree, index, n - index - 1);
+            outDegree[n - 1] = 0;
+            inDegree[n - 1] = 0;
+            for(int i = 0; i < n - 1; i++){
+                renumber(outTargets[i], outDegree[i], index);
+                renumber(inSources[i], inDegree[i], index);
+            }
+            id.remove(v.value);
+            val.remove(index);
+            for(int i = index; i < n - 1; i++){
+                Vertex<T> cur = val.get(i);
+                cur.id = i;
+                id.put(cur.value, i);
+            }
+        }
+
+        /**
+         * @return true if the vertex is in the graph, false for the handles of the removed vertices.
+         */
+        boolean contains(Vertex<T> v){
+            return v.id < val.size() && val.get(v.id) == v;
+        }
+
+        private static void shiftDown(Object[] lists, int index, int n){
+            System.arraycopy(lists, index + 1, lists, index, n - index - 1);
+            lists[n - 1] = null;
+        }
+
+        private static void renumber(int[] list, int length, int removed){
+            for(int k = 0; k < length; k++){
+                if(list[k] > removed) list[k]--;
+            }
+        }
+
+        private static int findInList(int[] list, int length, int vertex){
+            for(int k = 0; k < length; k++){
+                if(list[k] == vertex) return k;
+            }
+            return -1;
+        }
+
+        /**
+         * Removes the vertex from the adjacency list of the owner, keeping the order of the rest of the list.
+         * @return true if the vertex was in the list.
+         */
+        private static boolean removeFromList(int[][] lists, long[][] weights, int[] degree, int owner, int vertex){
+            int k = findInList(lists[owner], degree[owner], vertex);
+            if(k == -1) return false;
+            int tail = degree[owner] - k - 1;
+            System.arraycopy(lists[owner], k + 1, lists[owner], k, tail);
+            System.arraycopy(weights[owner], k + 1, weights[owner], k, tail);
+            degree[owner]--;
+            return true;
+        }
+
+        /**
+         * Puts the vertex with the weight to the adjacency list of the owner, or updates the weight if it is already there.
+         * @return true if the vertex was added to the list.
+         */
+        private static boolean putToList(int[][] lists, long[][] weights, int[] degree, int owner, int vertex, long bits){
+            int k = findInList(lists[owner], degree[owner], vertex);
+            if(k != -1){
+                weights[owner][k] = bits;
+                return false;
+            }
+            int d = degree[owner];
+            if(d == lists[owner].length){
+                lists[owner] = Arrays.copyOf(lists[owner], d * 2);
+                weights[owner] = Arrays.copyOf(weights[owner], d * 2);
+            }
+            lists[owner][d] = vertex;
+            weights[owner][d] = bits;
+            degree[owner] = d + 1;
+            return true;
+        }
+
+        /**
+         * Adds a new edge to the graph, or replaces the weight of the existing one.
+         * The null weight removes the edge.
+         * @param from The vertex from which the edge begins
+         * @param to The vertex at which the edge ends.
+         * @param weight The weight of the edge.
+         * @return The created edge.
+         */
+        @Override
+        public Edge<E, T> addEdge(Vertex<T> from, Vertex<T> to, E weight) throws Exception {
+            if(from == null || to == null) throw new Exception("The vertex is null!");
+            if(weight == null){
+                removeEdge(from.id, to.id);
+            } else {
+                addEdge(from.id, to.id, codec.encode(weight));
+            }
+            return new Edge<>(from, to, weight);
+        }
+
+        /**
+         * Adds the edge between the vertices with the given indices without creating any objects.
+         * @param bits The encoded weight of the edge.
+         */
+        void addEdge(int from, int to, long bits){
+            if(putToList(outTargets, outWeights, outDegree, from, to, bits)) edgeCount++;
+            putToList(inSources, inWeights, inDegree, to, from, bits);
+        }
+
+        /**
+         * Removes the edge between the vertices with the given indices if it exists.
+         */
+        void removeEdge(int from, int to){
+            if(removeFromList(outTargets, outWeights, outDegree, from, to)) edgeCount--;
+            removeFromList(inSources, inWeights, inDegree, to, from);
+        }
+
+        /**
+         * Removes the specified edge from the adjacency lists of both of its vertices.
+         * @param e The specified edge.
+         */
+        @Override
+        public void removeEdge(Edge<E, T> e) throws Exception {
+            if(e == null) throw new Exception("The edge is null!");
+            removeEdge(e.from.id, e.to.id);
+        }
+
+        /**
+         * Gets all the edges from the specified vertex from its adjacency list.
+         * @param v The specified vertex v
+         * @return ArrayList of the requested edges.
+         */
+        @Override
+        public ArrayList<Edge<E, T>> edgesFrom(Vertex<T> v) throws Exception {
+            if(v == null) throw new Exception("The vertex is null!");
+            int curId = v.id;
+            ArrayList<Edge<E, T>> answer = new ArrayList<>(outDegree[curId]);
+            for(int k = 0; k < outDegree[curId]; k++){
+                answer.add(new Edge<>(v, val.get(outTargets[curId][k]), codec.decode(outWeights[curId][k])));
+            }
+            return answer;
+        }
+
+        /**
+         * Gets all the edges to the specified vertex from its list of incoming edges.
+         * @param v The specified vertex v
+         * @return ArrayList of the requested edges.
+         */
+        @Override
+        public ArrayList<Edge<E, T>> edgesTo(Vertex<T> v) throws Exception {
+            if(v == null) throw new Exception("The vertex is null!");
+            int curId = v.id;
+            ArrayList<Edge<E, T>> answer = new ArrayList<>(inDegree[curId]);
+            for(int k = 0; k < inDegree[curId]; k++){
+                answer.add(new Edge<>(val.get(inSources[curId][k]), v, codec.decode(inWeights[curId][k])));
+            }
+            return answer;
+        }
+
+        /**
+         * Finds the vertex by the specified value.
+         * @param value The specified value of the vertex
+         * @return The found vertex or null.
+         */
+        @Override
+        public Vertex<T> findVertex(T value) {
+            Integer index = id.get(value);
+            return index == null ? null : val.get(index);
+        }
+
+        /**
+         * Finds the edge between the vertices of the specified values by scanning the adjacency list of the first one.
+         * @param from_value The value of the vertex from which the egde begins.
+         * @param to_value The value of the vertex at which the edge ends
+         * @return The found edge or null.
+         */
+        @Override
+        public Edge<E, T> findEdge(T from_value, T to_value) {
+            Integer id1 = id.get(from_value), id2 = id.get(to_value);
+            if(id1 == null || id2 == null) return null;
+            int k = findInList(outTargets[id1], outDegree[id1], id2);
+            if(k == -1) return null;
+            return new Edge<>(val.get(id1), val.get(id2), codec.decode(outWeights[id1][k]));
+        }
+
+        /**
+         * Checks if there is an edge between the two vertices.
+         * @param v The vertex from which the edge begins.
+         * @param u The vertex at which the edge ends.
+         * @return bool if the edge exists or not
+         */
+        @Override
+        public boolean hasEdge(Vertex<T> v, Vertex<T> u) throws Exception {
+            if(v == null || u == null) throw new Exception("Some vertices are null");
+            return findInList(outTargets[v.id], outDegree[v.id], u.id) != -1;
+        }
+
+        /**
+         * Rerturns arrayList of the vertices which complete the cycle, or null is there is no cycle.
+         * @return The array of the vertices which make up a cycle or null.
+         */
+        ArrayList<Vertex<T>> isAcyclic(){
+            CycleFinder finder = new CycleFinder();
+            if(!finder.find(this)) return null;
+            ArrayList<Vertex<T>> answer = new ArrayList<>(finder.cycleLength);
+            for(int i = 0; i < finder.cycleLength; i++){
+                answer.add(val.get(finder.cycle[i]));
+            }
+            return answer;
+        }
+
+        @Override
+        public int slots() {
+            return val.size();
+        }
+
+        @Override
+        public boolean isLive(int v) {
+            return v < val.size();
+        }
+
+        @Override
+        public void forEachOut(int vertexId, EdgeVisitor visitor) {
+            int[] targets = outTargets[vertexId];
+            long[] weights = outWeights[vertexId];
+            for(int k = 0; k < outDegree[vertexId]; k++){
+                long bits = weights[k];
+                visitor.visit(targets[k], codec.toLong(bits), codec.bandwidth(bits));
+            }
+        }
+
+        @Override
+        public void forEachIn(int vertexId, EdgeVisitor visitor) {
+            int[] sources = inSources[vertexId];
+            long[] weights = inWeights[vertexId];
+            for(int k = 0; k < inDegree[vertexId]; k++){
+                long bits = weights[k];
+                visitor.visit(sources[k], codec.toLong(bits), codec.bandwidth(bits));
+            }
+        }
+
+        @Override
+        public int nextEdge(int v, int pos) {
+            return pos + 1 < outDegree[v] ? pos + 1 : -1;
+        }
+
+        @Override
+        public int target(int v, int pos) {
+            return outTargets[v][pos];
+        }
+
+        @Override
+        public long weightAsLong(int v, int pos) {
+            return codec.toLong(outWeights[v][pos]);
+        }
+
+        /**
+         * Transposes the graph by swapping the lists of outgoing and incoming edges.
+         */
+        void transpose(){
+            int[][] lists = outTargets;
+            outTargets = inSources;
+            inSources = lists;
+            long[][] weights = outWeights;
+            outWeights = inWeights;
+            inWeights = weights;
+            int[] degree = outDegree;
+            outDegree = inDegree;
+            inDegree = degree;
+        }
+
+        /**
+         * Creates the immutable compressed sparse row copy of the graph.
+         * The edges of every vertex are sorted by the index of the other vertex.
+         * @return The frozen graph.
+         */
+        CsrGraph<T, E> freeze(){
+            int n = val.size();
+            ArrayList<Vertex<T>> vertices = new ArrayList<>(n);
+            HashMap<T, Integer> ids = new HashMap<>(n * 2);
+            for(Vertex<T> v : val){
+                vertices.add(new Vertex<>(v.value, v.id));
+                ids.put(v.value, v.id);
+            }
+            int[] outOffsets = new int[n + 1], inOffsets = new int[n + 1];
+            for(int i = 0; i < n; i++){
+                outOffsets[i + 1] = outOffsets[i] + outDegree[i];
+                inOffsets[i + 1] = inOffsets[i] + inDegree[i];
+            }
+            int[] targets = new int[edgeCount], sources = new int[edgeCount];
+            long[] targetWeights = new long[edgeCount], sourceWeights = new long[edgeCount];
+            for(int i = 0; i < n; i++){
+                CsrGraph.fillRow(outTargets[i], outWeights[i], outDegree[i], targets, targetWeights, outOffsets[i]);
+                CsrGraph.fillRow(inSources[i], inWeights[i], inDegree[i], sources, sourceWeights, inOffsets[i]);
+            }
+            return new CsrGraph<>(codec, ids, vertices, outOffsets, targets, targetWeights, inOffsets, sources, sourceWeights);
+        }
+    }
+
+    /**
+     * The immutable graph in the compressed sparse row format.
+     * The edges from the vertex i are stored in targets and targetWeights at the positions from outOffsets[i] to outOffsets[i + 1],
+     * sorted by the target. The same arrays for the reversed edges make edgesTo take time proportional to the degree.
+     * The arrays are kept in the buffers, so the graph loaded by GraphSnapshot is used right from the mapped file.
+     * All the mutating methods throw the exception.
+     * @param <T> The type of the value of the vertex.
+     * @param <E> The type of the weight of the edge.
+     */
+    static class CsrGraph<T, E> implements Graph<T, E>, IndexedAdjacency{
+
+        final WeightCodec<E> codec; //Converts the primitive bits to the weights
+        final HashMap<T, Integer> id; //Hashmap to get the index of the vertex by its value
+        final ArrayList<Vertex<T>> val; //The arrays of the vertices
+        final IntBuffer outOffsets, targets; //The edges from every vertex
+        final LongBuffer targetWeights; //The weights of the edges from every vertex
+        final IntBuffer inOffsets, sources; //The edges to every vertex
+        final LongBuffer sourceWeights; //The weights of the edges to every vertex
+
+        CsrGraph(WeightCodec<E> codec, HashMap<T, Integer> id, ArrayList<Vertex<T>> val,
+                 int[] outOffsets, int[] targets, long[] targetWeights,
+                 int[] inOffsets, int[] sources, long[] sourceWeights) {
+            this(codec, id, val, IntBuffer.wrap(outOffsets), IntBuffer.wrap(targets), LongBuffer.wrap(targetWeights),
+                    IntBuffer.wrap(inOffsets), IntBuffer.wrap(sources), LongBuffer.wrap(sourceWeights));
+        }
+
+        /**
+         * Creates the graph over the given buffers, which may be on the heap or mapped from the file.
+         */
+        CsrGraph(WeightCodec<E> codec, HashMap<T, Integer> id, ArrayList<Vertex<T>> val,
+                 IntBuffer outOffsets, IntBuffer targets, LongBuffer targetWeights,
+                 IntBuffer inOffsets, IntBuffer sources, LongBuffer sourceWeights) {
+            this.codec = codec;
+            this.id = id;
+            this.val = val;
+            this.outOffsets = outOffsets;
+            this.targets = targets;
+            this.targetWeights = targetWeights;
+            this.inOffsets = inOffsets;
+            this.sources = sources;
+            this.sourceWeights = sourceWeights;
+        }
+
+        /**
+         * Copies one adjacency list to the position in the CSR arrays, sorting it by the vertex index with insertion sort,
+         * as the lists are short.
+         */
+        static void fillRow(int[] list, long[] weights, int length, int[] to, long[] toWeights, int offset){
+            for(int k = 0; k < length; k++){
+                int j = offset + k;
+                while(j > offset && to[j - 1] > list[k]){
+                    to[j] = to[j - 1];
+                    toWeights[j] = toWeights[j - 1];
+                    j--;
+                }
+                to[j] = list[k];
+                toWeights[j] = weights[k];
+            }
+        }
+
+        /**
+         * @return The number of the vertices in the graph.
+         */
+        int size(){
+            return val.size();
+        }
+
+        /**
+         * @return The number of the edges in the graph.
+         */
+        int edgeCount(){
+            return targets.capacity();
+        }
+
+        /**
+         * Finds the edge with the binary search in the row of the vertex.
+         * @return The position of the edge in the targets, or -1 if there is no such edge.
+         */
+        int edgeIndex(int from, int to){
+            int low = outOffsets.get(from), high = outOffsets.get(from + 1) - 1;
+            while(low <= high){
+                int mid = (low + high) >>> 1;
+                int target = targets.get(mid);
+                if(target < to){
+                    low = mid + 1;
+                } else if(target > to){
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int slots() {
+            return val.size();
+        }
+
+        @Override
+        public boolean isLive(int v) {
+            return v < val.size();
+        }
+
+        @Override
+        public int nextEdge(int v, int pos) {
+            int next = pos == -1 ? outOffsets.get(v) : pos + 1;
+            return next < outOffsets.get(v + 1) ? next : -1;
+        }
+
+        @Override
+        public int target(int v, int pos) {
+            return targets.get(pos);
+        }
+
+        @Override
+        public long weightAsLong(int v, int pos) {
+            return codec.toLong(targetWeights.get(pos));
+        }
+
+        @Override
+        public void forEachOut(int vertexId, EdgeVisitor visitor) {
+            for(int k = outOffsets.get(vertexId); k < outOffsets.get(vertexId + 1); k++){
+                long bits = targetWeights.get(k);
+                visitor.visit(targets.get(k), codec.toLong(bits), codec.bandwidth(bits));
+            }
+        }
+
+        @Override
+        public void forEachIn(int vertexId, EdgeVisitor visitor) {
+            for(int k = inOffsets.get(vertexId); k < inOffsets.get(vertexId + 1); k++){
+                long bits = sourceWeights.get(k);
+                visitor.visit(sources.get(k), codec.toLong(bits), codec.bandwidth(bits));
+            }
+        }
+
+        @Override
+        public Vertex<T> addVertex(T value) {
+            throw new UnsupportedOperationException("The graph is frozen!");
+        }
+
+        @Override
+        public void removeVertex(Vertex<T> v) throws Exception {
+            throw new Exception("The graph is frozen!");
+        }
+
+        @Override
+        public Edge<E, T> addEdge(Vertex<T> from, Vertex<T> to, E weight) throws Exception {
+            throw new Exception("The graph is frozen!");
+        }
+
+        @Override
+        public void removeEdge(Edge<E, T> e) throws Exception {
+            throw new Exception("The graph is frozen!");
+        }
+
+        /**
+         * Gets all the edges from the specified vertex from its row of the CSR arrays.
+         * @param v The specified vertex v
+         * @return ArrayList of the requested edges.
+         */
+        @Override
+        public ArrayList<Edge<E, T>> edgesFrom(Vertex<T> v) throws Exception {
+            if(v == null) throw new Exception("The vertex is null!");
+            Vertex<T> from = val.get(v.id);
+            ArrayList<Edge<E, T>> answer = new ArrayList<>(outOffsets.get(v.id + 1) - outOffsets.get(v.id));
+            for(int k = outOffsets.get(v.id); k < outOffsets.get(v.id + 1); k++){
+                answer.add(new Edge<>(from, val.get(targets.get(k)), codec.decode(targetWeights.get(k))));
+            }
+            return answer;
+        }
+
+        /**
+         * Gets all the edges to the specified vertex from its row of the reversed CSR arrays.
+         * @param v The specified vertex v
+         * @return ArrayList of the requested edges.
+         */
+        @Override
+        public ArrayList<Edge<E, T>> edgesTo(Vertex<T> v) throws Exception {
+            if(v == null) throw new Exception("The vertex is null!");
+            Vertex<T> to = val.get(v.id);
+            ArrayList<Edge<E, T>> answer = new ArrayList<>(inOffsets.get(v.id + 1) - inOffsets.get(v.id));
+            for(int k = inOffsets.get(v.id); k < inOffsets.get(v.id + 1); k++){
+                answer.add(new Edge<>(val.get(sources.get(k)), to, codec.decode(sourceWeights.get(k))));
+            }
+            return answer;
+        }
+
+        @Override
+        public Vertex<T> findVertex(T value) {
+            Integer index = id.get(value);
+            return index == null ? null : val.get(index);
+        }
+
+        /**
+         * Finds the edge between the vertices of the specified values with the binary search in the row.
+         * @param from_value The value of the vertex from which the egde begins.
+         * @param to_value The value of the vertex at which the edge ends
+         * @return The found edge or null.
+         */
+        @Override
+        public Edge<E, T> findEdge(T from_value, T to_value) {
+            Integer id1 = id.get(from_value), id2 = id.get(to_value);
+            if(id1 == null || id2 == null) return null;
+            int k = edgeIndex(id1, id2);
+            return k == -1 ? null : new Edge<>(val.get(id1), val.get(id2), codec.decode(targetWeights.get(k)));
+        }
+
+        @Override
+        public boolean hasEdge(Vertex<T> v, Vertex<T> u) throws Exception {
+            if(v == null || u == null) throw new Exception("Some vertices are null");
+            return edgeIndex(v.id, u.id) != -1;
+        }
+    }
+
+    /**
+     * Builds the CsrGraph from the list of the edges given by the indices of their vertices, without the objects per edge.
+     * The arrays are reserved for the expected number of the edges, and the edges are put to them as they come.
+     * build places the edges to the rows of their first vertices by the counting sort, which keeps their order, then sorts
+     * every row by the second vertex in parallel, leaving the last weight of the repeated edge as SparseGraph.addEdge does.
+     * The rows of the incoming edges are filled by the counting sort of the sorted rows, so they are sorted at once.
+     * @param <T> The type of the value of the vertex.
+     * @param <E> The type of the weight of the edge.
+     */
+    static class CsrBuilder<T, E> {
+        static final int SEQUENTIAL = 1 << 14; //The number of the edges which are sorted by one task
+
+        final WeightCodec<E> codec; //The codec of the weights
+        final List<T> values; //The value of every vertex
+        int[] from, to; //The vertices of the edges in the order they were added
+        long[] bits; //The encoded weights of the edges
+        int size; //The number of the added edges
+
+        /**
+         * @param codec The codec of the weights.
+         * @param values The values of the vertices, the vertex i has the value values.get(i).
+         * @param expectedEdges The number of the edges the arrays are reserved for.
+         */
+        CsrBuilder(WeightCodec<E> codec, List<T> values, int expectedEdges) {
+            this.codec = codec;
+            this.values = values;
+            int cap = Math.max(expectedEdges, 1);
+            from = new int[cap];
+            to = new int[cap];
+            bits = new long[cap];
+        }
+
+        /**
+         * Adds the edge between the vertices with the given indices.
+         * @param bits The encoded weight of the edge.
+         */
+        void add(int from, int to, long bits) throws Exception {
+            int n = values.size();
+            if(from < 0 || from >= n || to < 0 || to >= n) throw new Exception("The vertex is out of range!");
+            if(size == this.from.length){
+                int cap = size * 2;
+                this.from = Arrays.copyOf(this.from, cap);
+                this.to = Arrays.copyOf(this.to, cap);
+                this.bits = Arrays.copyOf(this.bits, cap);
+            }
+            this.from[size] = from;
+            this.to[size] = to;
+            this.bits[size++] = bits;
+        }
+
+        /**
+         * Adds the edges given by the arrays of the same length.
+         */
+        void addAll(int[] from, int[] to, long[] bits) throws Exception {
+            if(from.length != to.length || from.length != bits.length) throw new Exception("The arrays have different lengths!");
+            for(int i = 0; i < from.length; i++){
+                add(from[i], to[i], bits[i]);
+            }
+        }
+
+        CsrGraph<T, E> build(){
+            return build(ForkJoinPool.commonPool());
+        }
+
+        /**
+         * Creates the graph from the added edges.
+         * @param pool The threads sorting the rows.
+         * @return The frozen graph.
+         */
+        CsrGraph<T, E> build(ForkJoinPool pool){
+            int n = values.size();
+            ArrayList<Vertex<T>> vertices = new ArrayList<>(n);
+            HashMap<T, Integer> ids = new HashMap<>(n * 2);
+            for(int i = 0; i < n; i++){
+                vertices.add(new Vertex<>(values.get(i), i));
+                ids.put(values.get(i), i);
+            }
+            int[] rowOffsets = new int[n + 1];
+            for(int i = 0; i < size; i++){
+                rowOffsets[from[i] + 1]++;
+            }
+            for(int v = 0; v < n; v++){
+                rowOffsets[v + 1] += rowOffsets[v];
+            }
+            long[] keys = new long[size]; //The second vertex and the position of the edge, so the sort keeps the order of the repeated edges
+            int[] fill = Arrays.copyOf(rowOffsets, n);
+            for(int i = 0; i < size; i++){
+                keys[fill[from[i]]++] = ((long) to[i] << 32) | i;
+            }
+            int[] lengths = new int[n];
+            pool.invoke(new RowTask(rowOffsets, keys, lengths, 0, n));
+            int[] outOffsets = new int[n + 1], inOffsets = new int[n + 1];
+            for(int v = 0; v < n; v++){
+                outOffsets[v + 1] = outOffsets[v] + lengths[v];
+            }
+            int m = outOffsets[n];
+            int[] targets = new int[m], sources = new int[m];
+            long[] targetWeights = new long[m], sourceWeights = new long[m];
+            for(int v = 0; v < n; v++){
+                for(int k = 0; k < lengths[v]; k++){
+                    int edge = (int) keys[rowOffsets[v] + k];
+                    targets[outOffsets[v] + k] = to[edge];
+                    targetWeights[outOffsets[v] + k] = bits[edge];
+                    inOffsets[to[edge] + 1]++;
+                }
+            }
+            for(int v = 0; v < n; v++){
+                inOffsets[v + 1] += inOffsets[v];
+            }
+            fill = Arrays.copyOf(inOffsets, n);
+            for(int v = 0; v < n; v++){
+                for(int k = outOffsets[v]; k < outOffsets[v + 1]; k++){
+                    int j = fill[targets[k]]++;
+                    sources[j] = v;
+                    sourceWeights[j] = targetWeights[k];
+                }
+            }
+            return new CsrGraph<>(codec, ids, vertices, outOffsets, targets, targetWeights, inOffsets, sources, sourceWeights);
+        }
+
+        /**
+         * Sorts the rows from the given range and leaves the last of the repeated edges at the beginning of every row
+         * as the position of the edge, splitting the range in halves until it has few edges.
+         */
+        static class RowTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            final int[] rowOffsets, lengths;
+            final long[] keys;
+            final int fromRow, toRow;
+
+            RowTask(int[] rowOffsets, long[] keys, int[] lengths, int fromRow, int toRow) {
+                this.rowOffsets = rowOffsets;
+                this.keys = keys;
+                this.lengths = lengths;
+                this.fromRow = fromRow;
+                this.toRow = toRow;
+            }
+
+            @Override
+            protected void compute() {
+                if(toRow - fromRow > 1 && rowOffsets[toRow] - rowOffsets[fromRow] > SEQUENTIAL){
+                    int mid = (fromRow + toRow) >>> 1;
+                    invokeAll(new RowTask(rowOffsets, keys, lengths, fromRow, mid),
+                            new RowTask(rowOffsets, keys, lengths, mid, toRow));
+                    return;
+                }
+                for(int v = fromRow; v < toRow; v++){
+                    int start = rowOffsets[v], end = rowOffsets[v + 1];
+                    Arrays.sort(keys, start, end);
+                    int length = 0;
+                    for(int k = start; k < end; k++){
+                        if(k + 1 < end && keys[k + 1] >>> 32 == keys[k] >>> 32) continue;
+                        keys[start + length++] = keys[k] & 0xFFFFFFFFL;
+                    }
+                    lengths[v] = length;
+                }
+            }
+        }
+    }
+
+    /**
+     * Dijkstra's algorithm with the minimum bandwidth constraint over the frozen graph with W_and_B weights.
+     * The vertices are kept in the indexed 4-ary heap with decrease-key, ordered by the path value and then by the index,
+     * so the vertices are settled in the same order as in the linear scan of solveB.
+     *
+     * The work arrays are created once for the graph and reused by every query: the entries written by the previous
+     * queries are told apart by the number of the query, so a query neither clears the arrays nor allocates anything.
+     * The edges are read by Graph.forEachOut with the engine itself as the visitor, so no lambda is created per vertex.
+     */
+    static class ShortestPathEngine implements EdgeVisitor {
+        static final int INFINITY = (int) 1e9;
+
+        final CsrGraph<?, W_and_B> graph; //The graph the queries are run on
+        final int[] pathValues; //The length of the shortest path found to every vertex
+        final int[] minBandWidthValues; //The bottleneck bandwidth of the path found to every vertex
+        final int[] prevVertices; //The previous vertex of the path found to every vertex
+        final int[] visited; //The number of the query in which the vertex was reached
+        final int[] heap; //The vertices of the heap
+        final int[] heapPosition; //The position of every vertex in the heap, -1 when the vertex is settled
+        int heapSize; //The number of the vertices in the heap
+        int query; //The number of the current query
+        int startVertex; //The start vertex of the current query
+        int minBandwidth; //The minimum bandwidth of the edges in the current query
+        int minId; //The vertex whose edges are visited
+        int value; //The length of the path to the vertex whose edges are visited
+
+        ShortestPathEngine(CsrGraph<?, W_and_B> graph) {
+            this.graph = graph;
+            int n = graph.size();
+            pathValues = new int[n];
+            minBandWidthValues = new int[n];
+            prevVertices = new int[n];
+            visited = new int[n];
+            heap = new int[n];
+            heapPosition = new int[n];
+        }
+
+        /**
+         * Finds the shortest paths from the start vertex using only the edges with the bandwidth at least minBandwidth.
+         * @param start The index of the start vertex.
+         * @param finish The index of the vertex after whose settling the search stops, or -1 to reach all the vertices.
+         * @param minBandwidth The minimum bandwidth of the edges of the path.
+         */
+        void run(int start, int finish, int minBandwidth){
+            query++;
+            startVertex = start;
+            this.minBandwidth = minBandwidth;
+            heapSize = 0;
+            reach(start, 0, INFINITY, -1);
+            while(heapSize > 0){
+                minId = poll();
+                if(minId == finish) return;
+                value = pathValues[minId];
+                graph.forEachOut(minId, this);
+            }
+        }
+
+        /**
+         * Relaxes the edge from the vertex minId.
+         */
+        @Override
+        public void visit(int to, long weight, int bandwidth) {
+            if(bandwidth < minBandwidth) return;
+            int newValue = value + (int) weight;
+            if(visited[to] != query){
+                reach(to, newValue, Math.min(minBandWidthValues[minId], bandwidth), minId);
+            } else if(heapPosition[to] != -1 && newValue < pathValues[to]){
+                pathValues[to] = newValue;
+                minBandWidthValues[to] = Math.min(minBandWidthValues[minId], bandwidth);
+                prevVertices[to] = minId;
+                siftUp(heapPosition[to]);
+            }
+        }
+
+        /**
+         * Marks the vertex as reached in the current query and puts it to the heap.
+         */
+        private void reach(int v, int value, int bandwidth, int prev){
+            visited[v] = query;
+            pathValues[v] = value;
+            minBandWidthValues[v] = bandwidth;
+            prevVertices[v] = prev;
+            heap[heapSize] = v;
+            heapPosition[v] = heapSize;
+            siftUp(heapSize++);
+        }
+
+        private boolean less(int v, int u){
+            return pathValues[v] < pathValues[u] || (pathValues[v] == pathValues[u] && v < u);
+        }
+
+        private int poll(){
+            int top = heap[0];
+            heapPosition[top] = -1;
+            int last = heap[--heapSize];
+            if(heapSize > 0){
+                heap[0] = last;
+                heapPosition[last] = 0;
+                siftDown(0);
+            }
+            return top;
+        }
+
+        private void siftUp(int pos){
+            int v = heap[pos];
+            while(pos > 0){
+                int parent = (pos - 1) >>> 2;
+                int p = heap[parent];
+                if(!less(v, p)) break;
+                heap[pos] = p;
+                heapPosition[p] = pos;
+                pos = parent;
+            }
+            heap[pos] = v;
+            heapPosition[v] = pos;
+        }
+
+        private void siftDown(int pos){
+            int v = heap[pos];
+            while(true){
+                int first = (pos << 2) + 1;
+                if(first >= heapSize) break;
+                int best = first;
+                int end = Math.min(first + 4, heapSize);
+                for(int c = first + 1; c < end; c++){
+                    if(less(heap[c], heap[best])) best = c;
+                }
+                if(!less(heap[best], v)) break;
+                heap[pos] = heap[best];
+                heapPosition[heap[pos]] = pos;
+                pos = best;
+            }
+            heap[pos] = v;
+            heapPosition[v] = pos;
+        }
+
+        /**
+         * @return true if the vertex was reached in the last query.
+         */
+        boolean isReached(int v){
+            return visited[v] == query;
+        }
+
+        /**
+         * @return The length of the path to the vertex in the last query, INFINITY if it was not reached.
+         */
+        int distance(int v){
+            return isReached(v) ? pathValues[v] : INFINITY;
+        }
+
+        /**
+         * @return The bottleneck bandwidth of the path to the vertex in the last query.
+         */
+        int bandwidth(int v){
+            return isReached(v) ? minBandWidthValues[v] : INFINITY;
+        }
+
+        /**
+         * Writes the path from the start vertex to the given vertex into the buffer.
+         * @param finish The reached vertex.
+         * @param buffer The array of the size of the graph at least.
+         * @return The number of the vertices in the path.
+         */
+        int path(int finish, int[] buffer){
+            int length = 0;
+            for(int cur = finish; cur != -1; cur = prevVertices[cur]){
+                buffer[length++] = cur;
+            }
+            for(int i = 0, j = length - 1; i < j; i++, j--){
+                int tmp = buffer[i];
+                buffer[i] = buffer[j];
+                buffer[j] = tmp;
+            }
+            return length;
+        }
+    }
+
+    /**
+     * The query for the shortest path with the minimum bandwidth constraint, as in solveB.
+     * The indices of the vertices start from zero.
+     */
+    static class PathQuery {
+        int start, finish, minBandwidth;
+
+        PathQuery(int start, int finish, int minBandwidth) {
+            this.start = start;
+            this.finish = finish;
+            this.minBandwidth = minBandwidth;
+        }
+    }
+
+    /**
+     * The answer to the PathQuery: the vertices of the path, its weight and its bottleneck bandwidth.
+     * The path is null if the finish vertex cannot be reached.
+     */
+    static class PathResult {
+        int[] path;
+        int weight, bandwidth;
+
+        /**
+         * Takes the path to the finish vertex from the last query of the engine.
+         * @param buffer The array of the size of the graph at least, used to collect the path.
+         */
+        PathResult(ShortestPathEngine engine, int finish, int[] buffer) {
+            if(engine.isReached(finish)){
+                path = Arrays.copyOf(buffer, engine.path(finish, buffer));
+                weight = engine.distance(finish);
+                bandwidth = engine.bandwidth(finish);
+            }
+        }
+
+        /**
+         * @param path The vertices of the path, or null if the finish is not reachable.
+         */
+        PathResult(int[] path, int weight, int bandwidth) {
+            this.path = path;
+            this.weight = weight;
+            this.bandwidth = bandwidth;
+        }
+
+        /**
+         * Prints the answer in the format of solveB, with the indices of the vertices starting from one.
+         */
+        void print(PrintWriter out){
+            if(path == null){
+                out.print("IMPOSSIBLE");
+                return;
+            }
+            out.println(path.length + " " + weight + " " + bandwidth);
+            for(int v : path){
+                out.print((v + 1) + " ");
+            }
+        }
+    }
+
+    /**
+     * Answers many PathQueries over one frozen graph in parallel.
+     * The queries with the same start vertex and the same minimum bandwidth are grouped, and one run of Dijkstra's algorithm
+     * answers the whole group. The groups are split between the threads of the ForkJoinPool, and every thread keeps its own
+     * ShortestPathEngine and path buffer, so the work arrays are not shared and not allocated again.
+     */
+    static class BatchPathSolver {
+        final CsrGraph<?, W_and_B> graph; //The graph the queries are run on
+        final ForkJoinPool pool; //The threads answering the queries
+        final ThreadLocal<ShortestPathEngine> engines; //The engine of every thread
+        final ThreadLocal<int[]> buffers; //The path buffer of every thread
+
+        BatchPathSolver(CsrGraph<?, W_and_B> graph, ForkJoinPool pool) {
+            this.graph = graph;
+            this.pool = pool;
+            engines = ThreadLocal.withInitial(() -> new ShortestPathEngine(graph));
+            buffers = ThreadLocal.withInitial(() -> new int[graph.size()]);
+        }
+
+        BatchPathSolver(CsrGraph<?, W_and_B> graph) {
+            this(graph, ForkJoinPool.commonPool());
+        }
+
+        /**
+         * Answers all the queries.
+         * @param queries The list of the queries.
+         * @return The answers in the order of the queries.
+         */
+        PathResult[] solve(List<PathQuery> queries){
+            int q = queries.size();
+            Integer[] order = new Integer[q];
+            for(int i = 0; i < q; i++){
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> {
+                PathQuery x = queries.get(a), y = queries.get(b);
+                if(x.start != y.start) return Integer.compare(x.start, y.start);
+                return Integer.compare(x.minBandwidth, y.minBandwidth);
+            });
+            int[] sorted = new int[q];
+            int[] groupStarts = new int[q + 1];
+            int groups = 0;
+            for(int i = 0; i < q; i++){
+                sorted[i] = order[i];
+                PathQuery cur = queries.get(sorted[i]);
+                if(i == 0 || cur.start != queries.get(sorted[i - 1]).start || cur.minBandwidth != queries.get(sorted[i - 1]).minBandwidth){
+                    groupStarts[groups++] = i;
+                }
+            }
+            groupStarts[groups] = q;
+            PathResult[] results = new PathResult[q];
+            pool.invoke(new GroupTask(queries, sorted, groupStarts, 0, groups, results));
+            return results;
+        }
+
+        /**
+         * The task answering the groups from the given range, splitting it in halves until one group is left.
+         */
+        class GroupTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            final List<PathQuery> queries;
+            final int[] sorted, groupStarts;
+            final int from, to;
+            final PathResult[] results;
+
+            GroupTask(List<PathQuery> queries, int[] sorted, int[] groupStarts, int from, int to, PathResult[] results) {
+                this.queries = queries;
+                this.sorted = sorted;
+                this.groupStarts = groupStarts;
+                this.from = from;
+                this.to = to;
+                this.results = results;
+            }
+
+            @Override
+            protected void compute() {
+                if(to - from > 1){
+                    int mid = (from + to) >>> 1;
+                    invokeAll(new GroupTask(queries, sorted, groupStarts, from, mid, results),
+                            new GroupTask(queries, sorted, groupStarts, mid, to, results));
+                    return;
+                }
+                if(to == from) return;
+                ShortestPathEngine engine = engines.get();
+                int[] buffer = buffers.get();
+                int first = groupStarts[from], last = groupStarts[from + 1];
+                PathQuery query = queries.get(sorted[first]);
+                engine.run(query.start, last - first == 1 ? query.finish : -1, query.minBandwidth);
+                for(int i = first; i < last; i++){
+                    results[sorted[i]] = new PathResult(engine, queries.get(sorted[i]).finish, buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * The contraction hierarchy of the frozen graph with W_and_B weights, built over the edges with the bandwidth at least
+     * the given threshold, which answers the shortest path queries by the bidirectional search over a few vertices.
+     *
+     * The vertices are contracted one by one in the order of the edge difference (the number of the shortcuts needed minus
+     * the number of the edges removed) plus the number of the contracted neighbours, updated lazily. When the vertex v is
+     * contracted, the shortcut u -> w is added for its neighbours u -> v -> w unless the witness search, the limited Dijkstra
+     * from u which avoids v, finds the path which is not longer. Every shortcut remembers its two halves, so the path can be
+     * unpacked, and the minimum bandwidth of them, so the bottleneck of the path is known without unpacking.
+     *
+     * The query runs Dijkstra's algorithm from the start over the edges to the higher vertices, and from the finish over the
+     * reversed edges from the higher vertices, and stops when both queues have no vertex closer than the best meeting.
+     * If there are several shortest paths, the found one may differ from the path of ShortestPathEngine.
+     */
+    static class ContractionHierarchy {
+        static final int WITNESS_LIMIT = 128; //The number of the vertices settled by one witness search
+
+        /**
+         * The heap of the int values ordered by their long keys, the decrease-key is done by adding the value again.
+         */
+        static final class LongHeap {
+            long[] keys = new long[16];
+            int[] values = new int[16];
+            int size;
+
+            void push(long key, int value){
+                if(size == keys.length){
+                    keys = Arrays.copyOf(keys, size * 2);
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                int pos = size++;
+                while(pos > 0){
+                    int parent = (pos - 1) >>> 1;
+                    if(keys[parent] <= key) break;
+                    keys[pos] = keys[parent];
+                    values[pos] = values[parent];
+                    pos = parent;
+                }
+                keys[pos] = key;
+                values[pos] = value;
+            }
+
+            long topKey(){
+                return keys[0];
+            }
+
+            /**
+             * @return The value with the smallest key, which is removed.
+             */
+            int pop(){
+                int top = values[0];
+                long key = keys[--size];
+                int value = values[size];
+                int pos = 0;
+                while(true){
+                    int child = (pos << 1) + 1;
+                    if(child >= size) break;
+                    if(child + 1 < size && keys[child + 1] < keys[child]) child++;
+                    if(keys[child] >= key) break;
+                    keys[pos] = keys[child];
+                    values[pos] = values[child];
+                    pos = child;
+                }
+                keys[pos] = key;
+                values[pos] = value;
+                return top;
+            }
+        }
+
+        final int n; //The number of the vertices
+        final int threshold; //The minimum bandwidth of the used edges
+        int edgeCount; //The number of the edges and the shortcuts
+        int[] edgeFrom = new int[16], edgeTo = new int[16]; //The vertices of every edge
+        long[] edgeWeight = new long[16]; //The weight of every edge
+        int[] edgeBandwidth = new int[16]; //The bandwidth of the edge, or the bottleneck of the shortcut
+        int[] edgeFirst = new int[16], edgeSecond = new int[16]; //The halves of the shortcut, -1 for the edges of the graph
+        int[] rank; //The position of every vertex in the order of the contraction
+        int[] upOffsets, upEdges; //The edges from every vertex to the higher vertices
+        int[] downOffsets, downEdges; //The edges to every vertex from the higher vertices
+
+        int[][] out, in; //The edges of every vertex during the contraction
+        int[] outDegree, inDegree;
+        boolean[] contracted;
+        long[] witnessDist; //The distances of the witness search
+        int[] witnessSeen; //The number of the witness search in which the vertex was reached
+        int witnessQuery;
+        final LongHeap witnessHeap = new LongHeap();
+
+        long[] forwardDist, backwardDist; //The distances of the query
+        int[] forwardEdge, backwardEdge; //The edge by which the vertex was reached in the query
+        int[] forwardSeen, backwardSeen; //The number of the query in which the vertex was reached
+        int query;
+        final LongHeap forward = new LongHeap(), backward = new LongHeap();
+        int[] unpack = new int[16]; //The stack of the edges being unpacked
+
+        /**
+         * Builds the hierarchy.
+         * @param graph The graph.
+         * @param threshold The edges with the smaller bandwidth are not used.
+         */
+        ContractionHierarchy(CsrGraph<?, W_and_B> graph, int threshold) {
+            n = graph.size();
+            this.threshold = threshold;
+            out = new int[n][];
+            in = new int[n][];
+            outDegree = new int[n];
+            inDegree = new int[n];
+            for(int v = 0; v < n; v++){
+                out[v] = new int[4];
+                in[v] = new int[4];
+            }
+            for(int v = 0; v < n; v++){
+                for(int k = graph.outOffsets.get(v); k < graph.outOffsets.get(v + 1); k++){
+                    long bits = graph.targetWeights.get(k);
+                    int to = graph.targets.get(k);
+                    if((int) bits < threshold || to == v) continue;
+                    addEdge(v, to, bits >> 32, (int) bits, -1, -1);
+                }
+            }
+            contract();
+            buildSearchGraphs();
+            out = in = null;
+            outDegree = inDegree = null;
+            witnessDist = null;
+            witnessSeen = null;
+            forwardDist = new long[n];
+            backwardDist = new long[n];
+            forwardEdge = new int[n];
+            backwardEdge = new int[n];
+            forwardSeen = new int[n];
+            backwardSeen = new int[n];
+        }
+
+        private int addEdge(int from, int to, long weight, int bandwidth, int first, int second){
+            if(edgeCount == edgeFrom.length){
+                int cap = edgeCount * 2;
+                edgeFrom = Arrays.copyOf(edgeFrom, cap);
+                edgeTo = Arrays.copyOf(edgeTo, cap);
+                edgeWeight = Arrays.copyOf(edgeWeight, cap);
+                edgeBandwidth = Arrays.copyOf(edgeBandwidth, cap);
+                edgeFirst = Arrays.copyOf(edgeFirst, cap);
+                edgeSecond = Arrays.copyOf(edgeSecond, cap);
+            }
+            int e = edgeCount++;
+            edgeFrom[e] = from;
+            edgeTo[e] = to;
+            edgeWeight[e] = weight;
+            edgeBandwidth[e] = bandwidth;
+            edgeFirst[e] = first;
+            edgeSecond[e] = second;
+            if(outDegree[from] == out[from].length) out[from] = Arrays.copyOf(out[from], outDegree[from] * 2);
+            out[from][outDegree[from]++] = e;
+            if(inDegree[to] == in[to].length) in[to] = Arrays.copyOf(in[to], inDegree[to] * 2);
+            in[to][inDegree[to]++] = e;
+            return e;
+        }
+
+        /**
+         * Contracts all the vertices in the order of their priorities.
+         */
+        private void contract(){
+            rank = new int[n];
+            contracted = new boolean[n];
+            witnessDist = new long[n];
+            witnessSeen = new int[n];
+            int[] contractedNeighbours = new int[n];
+            LongHeap order = new LongHeap();
+            for(int v = 0; v < n; v++){
+                order.push(priority(v, 0), v);
+            }
+            int next = 0;
+            while(order.size > 0){
+                int v = order.pop();
+                long priority = priority(v, contractedNeighbours[v]);
+                if(order.size > 0 && priority > order.topKey()){
+                    order.push(priority, v);
+                    continue;
+                }
+                contractVertex(v, false);
+                contracted[v] = true;
+                rank[v] = next++;
+                for(int k = 0; k < outDegree[v]; k++){
+                    contractedNeighbours[edgeTo[out[v][k]]]++;
+                }
+                for(int k = 0; k < inDegree[v]; k++){
+                    contractedNeighbours[edgeFrom[in[v][k]]]++;
+                }
+            }
+        }
+
+        private long priority(int v, int contractedNeighbours){
+            int removed = 0;
+            for(int k = 0; k < outDegree[v]; k++){
+                if(!contracted[edgeTo[out[v][k]]]) removed++;
+            }
+            for(int k = 0; k < inDegree[v]; k++){
+                if(!contracted[edgeFrom[in[v][k]]]) removed++;
+            }
+            return contractVertex(v, true) - removed + contractedNeighbours;
+        }
+
+        /**
+         * Finds the shortcuts needed to contract the vertex.
+         * @param simulate If true, the shortcuts are only counted.
+         * @return The number of the shortcuts.
+         */
+        private int contractVertex(int v, boolean simulate){
+            int shortcuts = 0;
+            for(int i = 0; i < inDegree[v]; i++){
+                int first = in[v][i], u = edgeFrom[first];
+                if(contracted[u]) continue;
+                long maxVia = -1;
+                for(int j = 0; j < outDegree[v]; j++){
+                    int second = out[v][j], w = edgeTo[second];
+                    if(!contracted[w] && w != u) maxVia = Math.max(maxVia, edgeWeight[first] + edgeWeight[second]);
+                }
+                if(maxVia < 0) continue;
+                witness(u, v, maxVia);
+                for(int j = 0; j < outDegree[v]; j++){
+                    int second = out[v][j], w = edgeTo[second];
+                    if(contracted[w] || w == u) continue;
+                    long via = edgeWeight[first] + edgeWeight[second];
+                    if(witnessSeen[w] == witnessQuery && witnessDist[w] <= via) continue;
+                    shortcuts++;
+                    if(!simulate){
+                        addEdge(u, w, via, Math.min(edgeBandwidth[first], edgeBandwidth[second]), first, second);
+                    }
+                }
+            }
+            return shortcuts;
+        }
+
+        /**
+         * Runs the limited Dijkstra's algorithm from the vertex over the not contracted vertices, avoiding the given one.
+         */
+        private void witness(int start, int avoid, long maxDist){
+            witnessQuery++;
+            witnessHeap.size = 0;
+            witnessSeen[start] = witnessQuery;
+            witnessDist[start] = 0;
+            witnessHeap.push(0, start);
+            int settled = 0;
+            while(witnessHeap.size > 0 && settled < WITNESS_LIMIT){
+                long dist = witnessHeap.topKey();
+                int v = witnessHeap.pop();
+                if(dist > witnessDist[v]) continue;
+                if(dist > maxDist) break;
+                settled++;
+                for(int k = 0; k < outDegree[v]; k++){
+                    int e = out[v][k], to = edgeTo[e];
+                    if(to == avoid || contracted[to]) continue;
+                    long newDist = dist + edgeWeight[e];
+                    if(witnessSeen[to] != witnessQuery || newDist < witnessDist[to]){
+                        witnessSeen[to] = witnessQuery;
+                        witnessDist[to] = newDist;
+                        witnessHeap.push(newDist, to);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Splits the edges into the upward edges of the forward search and the reversed downward edges of the backward one.
+         */
+        private void buildSearchGraphs(){
+            upOffsets = new int[n + 1];
+            downOffsets = new int[n + 1];
+            for(int e = 0; e < edgeCount; e++){
+                if(rank[edgeFrom[e]] < rank[edgeTo[e]]){
+                    upOffsets[edgeFrom[e] + 1]++;
+                } else {
+                    downOffsets[edgeTo[e] + 1]++;
+                }
+            }
+            for(int v = 0; v < n; v++){
+                upOffsets[v + 1] += upOffsets[v];
+                downOffsets[v + 1] += downOffsets[v];
+            }
+            upEdges = new int[upOffsets[n]];
+            downEdges = new int[downOffsets[n]];
+            int[] upFill = Arrays.copyOf(upOffsets, n), downFill = Arrays.copyOf(downOffsets, n);
+            for(int e = 0; e < edgeCount; e++){
+                if(rank[edgeFrom[e]] < rank[edgeTo[e]]){
+                    upEdges[upFill[edgeFrom[e]]++] = e;
+                } else {
+                    downEdges[downFill[edgeTo[e]]++] = e;
+                }
+            }
+        }
+
+        /**
+         * Finds the shortest path between the vertices over the edges of the hierarchy.
+         * @return The path with its weight and bottleneck bandwidth, or the result without the path if the finish is not reachable.
+         */
+        PathResult query(int start, int finish){
+            if(start == finish) return new PathResult(new int[]{start}, 0, ShortestPathEngine.INFINITY);
+            query++;
+            forward.size = 0;
+            backward.size = 0;
+            forwardSeen[start] = query;
+            forwardDist[start] = 0;
+            forwardEdge[start] = -1;
+            forward.push(0, start);
+            backwardSeen[finish] = query;
+            backwardDist[finish] = 0;
+            backwardEdge[finish] = -1;
+            backward.push(0, finish);
+            long best = Long.MAX_VALUE;
+            int meet = -1;
+            while(true){
+                boolean forwardOpen = forward.size > 0 && forward.topKey() < best;
+                boolean backwardOpen = backward.size > 0 && backward.topKey() < best;
+                if(!forwardOpen && !backwardOpen) break;
+                boolean isForward = forwardOpen && (!backwardOpen || forward.topKey() <= backward.topKey());
+                LongHeap heap = isForward ? forward : backward;
+                long[] dist = isForward ? forwardDist : backwardDist, otherDist = isForward ? backwardDist : forwardDist;
+                int[] seen = isForward ? forwardSeen : backwardSeen, otherSeen = isForward ? backwardSeen : forwardSeen;
+                int[] parent = isForward ? forwardEdge : backwardEdge;
+                int[] offsets = isForward ? upOffsets : downOffsets, edges = isForward ? upEdges : downEdges;
+                long d = heap.topKey();
+                int v = heap.pop();
+                if(d > dist[v]) continue;
+                if(otherSeen[v] == query && d + otherDist[v] < best){
+                    best = d + otherDist[v];
+                    meet = v;
+                }
+                for(int k = offsets[v]; k < offsets[v + 1]; k++){
+                    int e = edges[k], to = isForward ? edgeTo[e] : edgeFrom[e];
+                    long newDist = d + edgeWeight[e];
+                    if(seen[to] != query || newDist < dist[to]){
+                        seen[to] = query;
+                        dist[to] = newDist;
+                        parent[to] = e;
+                        heap.push(newDist, to);
+                        if(otherSeen[to] == query && newDist + otherDist[to] < best){
+                            best = newDist + otherDist[to];
+                            meet = to;
+                        }
+                    }
+                }
+            }
+            if(meet == -1) return new PathResult(null, 0, 0);
+            return path(start, meet, best);
+        }
+
+        /**
+         * Unpacks the edges of the found path into the vertices of the graph.
+         */
+        private PathResult path(int start, int meet, long weight){
+            int bandwidth = ShortestPathEngine.INFINITY;
+            int[] vertices = new int[16];
+            int length = 0;
+            int top = 0;
+            for(int v = meet; v != start; v = edgeFrom[forwardEdge[v]]){
+                top = pushEdge(top, forwardEdge[v]);
+            }
+            for(int i = 0, j = top - 1; i < j; i++, j--){
+                int tmp = unpack[i];
+                unpack[i] = unpack[j];
+                unpack[j] = tmp;
+            }
+            for(int v = meet; backwardEdge[v] != -1; v = edgeTo[backwardEdge[v]]){
+                top = pushEdge(top, backwardEdge[v]);
+            }
+            vertices[length++] = start;
+            for(int i = 0; i < top; i++){
+                bandwidth = Math.min(bandwidth, edgeBandwidth[unpack[i]]);
+            }
+            int[] path = new int[top];
+            System.arraycopy(unpack, 0, path, 0, top);
+            for(int i = 0; i < path.length; i++){
+                int stack = 0;
+                int[] pending = unpack;
+                pending[stack++] = path[i];
+                while(stack > 0){
+                    int e = pending[--stack];
+                    if(edgeFirst[e] == -1){
+                        if(length == vertices.length) vertices = Arrays.copyOf(vertices, length * 2);
+                        vertices[length++] = edgeTo[e];
+                    } else {
+                        if(stack + 2 > pending.length) pending = unpack = Arrays.copyOf(pending, pending.length * 2);
+                        pending[stack++] = edgeSecond[e];
+                        pending[stack++] = edgeFirst[e];
+                    }
+                }
+            }
+            return new PathResult(Arrays.copyOf(vertices, length), (int) weight, bandwidth);
+        }
+
+        private int pushEdge(int top, int e){
+            if(top == unpack.length) unpack = Arrays.copyOf(unpack, top * 2);
+            unpack[top] = e;
+            return top + 1;
+        }
+    }
+
+    /**
+     * The contraction hierarchies of the frozen graph for all the minimum bandwidths.
+     * The queries whose minimum bandwidth lies between the same two bandwidths of the edges use the same edges,
+     * so one hierarchy is built for every such class, when the first query of the class comes.
+     */
+    static class ShortcutIndex {
+        final CsrGraph<?, W_and_B> graph; //The indexed graph
+        final int[] bandwidths; //The distinct bandwidths of the edges, sorted
+        final ContractionHierarchy[] hierarchies; //The hierarchy of every class, or null if it is not built yet
+
+        ShortcutIndex(CsrGraph<?, W_and_B> graph) {
+            this.graph = graph;
+            int m = graph.edgeCount();
+            int[] all = new int[m];
+            for(int k = 0; k < m; k++){
+                all[k] = (int) graph.targetWeights.get(k);
+            }
+            Arrays.sort(all);
+            int distinct = 0;
+            for(int k = 0; k < m; k++){
+                if(k == 0 || all[k] != all[k - 1]) all[distinct++] = all[k];
+            }
+            bandwidths = Arrays.copyOf(all, distinct);
+            hierarchies = new ContractionHierarchy[distinct + 1];
+        }
+
+        /**
+         * @return The hierarchy over the edges with the bandwidth at least the given one.
+         */
+        ContractionHierarchy hierarchy(int minBandwidth){
+            int index = Arrays.binarySearch(bandwidths, minBandwidth);
+            if(index < 0) index = -index - 1;
+            if(hierarchies[index] == null){
+                int threshold = index < bandwidths.length ? bandwidths[index] : minBandwidth;
+                hierarchies[index] = new ContractionHierarchy(graph, threshold);
+            }
+            return hierarchies[index];
+        }
+
+        /**
+         * Answers the query of solveB.
+         * @return The path with its weight and bottleneck bandwidth, which prints the same way as in solveB.
+         */
+        PathResult query(int start, int finish, int minBandwidth){
+            return hierarchy(minBandwidth).query(start, finish);
+        }
+    }
+
+    /**
+     * The Pareto frontier of the paths from one start vertex by their weight and their bottleneck bandwidth, found by one
+     * labeled search, so the queries of solveB with the same start and any minimum bandwidth are answered without the search.
+     *
+     * The label is the path to the vertex, given by its weight, its bottleneck and the label of the path without the last edge.
+     * The labels are taken from the heap by the weight and then by the greater bottleneck, so the labels of the vertex come out
+     * with the growing weight, and the label is kept only if its bottleneck is greater than the bottlenecks of all the kept
+     * labels of the vertex, otherwise it is dominated. The labels which cannot be kept are not put to the heap at all.
+     * So the frontier of the vertex has both the weight and the bottleneck growing, and the answer for the minimum bandwidth
+     * is its first label whose bottleneck is not less than it: the lightest path whose edges all have such bandwidth.
+     *
+     * If several paths have the least weight, the one with the greatest bottleneck is given, which may differ from
+     * the path of ShortestPathEngine.
+     */
+    static class ParetoFrontier {
+        final CsrGraph<?, W_and_B> graph; //The graph of the paths
+        final int[] bestBottleneck; //The greatest bottleneck of the kept labels of every vertex
+        final int[] lastLabel; //The kept label of every vertex with the greatest weight, -1 if there is none
+        final int[] visited; //The number of the search in which the vertex got the label
+        int search; //The number of the current search
+        int start; //The start vertex of the current search
+        int[] labelVertex = new int[16], labelWeight = new int[16], labelBottleneck = new int[16]; //The labels
+        int[] labelParent = new int[16]; //The label of the path without the last edge, -1 for the start
+        int[] previousLabel = new int[16]; //The kept label of the same vertex with the smaller weight, -1 if there is none
+        int labelCount; //The number of the labels
+        final ContractionHierarchy.LongHeap heap = new ContractionHierarchy.LongHeap(); //The labels not taken yet
+
+        ParetoFrontier(CsrGraph<?, W_and_B> graph) {
+            this.graph = graph;
+            int n = graph.size();
+            bestBottleneck = new int[n];
+            lastLabel = new int[n];
+            visited = new int[n];
+        }
+
+        /**
+         * Finds the frontiers of all the vertices for the paths from the start.
+         */
+        void run(int start){
+            search++;
+            this.start = start;
+            labelCount = 0;
+            heap.size = 0;
+            push(start, 0, ShortestPathEngine.INFINITY, -1);
+            IntBuffer offsets = graph.outOffsets, targets = graph.targets;
+            LongBuffer weights = graph.targetWeights;
+            while(heap.size > 0){
+                int label = heap.pop();
+                int v = labelVertex[label], bottleneck = labelBottleneck[label];
+                if(!improves(v, bottleneck)) continue;
+                if(visited[v] != search){
+                    visited[v] = search;
+                    lastLabel[v] = -1;
+                }
+                bestBottleneck[v] = bottleneck;
+                previousLabel[label] = lastLabel[v];
+                lastLabel[v] = label;
+                int weight = labelWeight[label];
+                for(int k = offsets.get(v), end = offsets.get(v + 1); k < end; k++){
+                    long bits = weights.get(k);
+                    int to = targets.get(k), newBottleneck = Math.min(bottleneck, (int) bits);
+                    if(improves(to, newBottleneck)) push(to, weight + (int) (bits >> 32), newBottleneck, label);
+                }
+            }
+        }
+
+        /**
+         * @return true if the label with the bottleneck is not dominated by the kept labels of the vertex.
+         */
+        private boolean improves(int v, int bottleneck){
+            return visited[v] != search || bottleneck > bestBottleneck[v];
+        }
+
+        private void push(int v, int weight, int bottleneck, int parent){
+            if(labelCount == labelVertex.length){
+                int cap = labelCount * 2;
+                labelVertex = Arrays.copyOf(labelVertex, cap);
+                labelWeight = Arrays.copyOf(labelWeight, cap);
+                labelBottleneck = Arrays.copyOf(labelBottleneck, cap);
+                labelParent = Arrays.copyOf(labelParent, cap);
+                previousLabel = Arrays.copyOf(previousLabel, cap);
+            }
+            int label = labelCount++;
+            labelVertex[label] = v;
+            labelWeight[label] = weight;
+            labelBottleneck[label] = bottleneck;
+            labelParent[label] = parent;
+            heap.push(((long) weight << 32) | ((0x7FFFFFFFL - bottleneck) & 0xFFFFFFFFL), label);
+        }
+
+        /**
+         * @return The lightest kept label of the vertex whose bottleneck is at least minBandwidth, or -1 if there is none.
+         */
+        int label(int finish, int minBandwidth){
+            if(visited[finish] != search) return -1;
+            if(finish == start) return lastLabel[finish];
+            int found = -1;
+            for(int label = lastLabel[finish]; label != -1 && labelBottleneck[label] >= minBandwidth; label = previousLabel[label]){
+                found = label;
+            }
+            return found;
+        }
+
+        /**
+         * @return The number of the kept labels of the vertex, the size of its frontier.
+         */
+        int frontierSize(int v){
+            if(visited[v] != search) return 0;
+            int size = 0;
+            for(int label = lastLabel[v]; label != -1; label = previousLabel[label]){
+                size++;
+            }
+            return size;
+        }
+
+        /**
+         * Answers the query of solveB from the start of the last search.
+         * @return The path with its weight and bottleneck bandwidth, which prints the same way as in solveB.
+         */
+        PathResult query(int finish, int minBandwidth){
+            int label = label(finish, minBandwidth);
+            if(label == -1) return new PathResult(null, 0, 0);
+            int length = 0;
+            for(int l = label; l != -1; l = labelParent[l]){
+                length++;
+            }
+            int[] path = new int[length];
+            for(int l = label, i = length - 1; l != -1; l = labelParent[l], i--){
+                path[i] = labelVertex[l];
+            }
+            return new PathResult(path, labelWeight[label], labelBottleneck[label]);
+        }
+    }
+
+    /**
+     * The iterative DFS looking for the cycle in the graph, or for the topological order if there is no cycle.
+     * The colors and the current path are kept in the arrays of the finder instead of the vertices,
+     * so the graph is only read and the same finder can be used again without allocations.
+     * The vertices and the edges are checked in the same order as by the recursive getCycle, so the same cycle is found.
+     */
+    static class CycleFinder {
+        int[] color = new int[0]; //0 - not visited, 1 - on the current path, 2 - finished
+        int[] stack = new int[0]; //The vertices of the current path
+        int[] position = new int[0]; //The position of the current edge of every vertex of the path
+        int[] depth = new int[0]; //The position of every vertex in the current path
+        int[] cycle = new int[0]; //The vertices of the found cycle
+        int cycleLength; //The number of the vertices of the found cycle
+        long cycleWeight; //The total weight of the edges of the found cycle
+        int[] order = new int[0]; //The vertices in the topological order, if there is no cycle
+        int orderLength; //The number of the vertices in the topological order
+
+        /**
+         * Looks for the cycle in the graph.
+         * @param graph The graph.
+         * @return true if the cycle is found, then it is in cycle and cycleWeight, otherwise the topological order is in order.
+         */
+        boolean find(IndexedAdjacency graph){
+            int n = graph.slots();
+            if(color.length < n){
+                int cap = Math.max(n, color.length * 2);
+                color = new int[cap];
+                stack = new int[cap];
+                position = new int[cap];
+                depth = new int[cap];
+                cycle = new int[cap];
+                order = new int[cap];
+            }
+            Arrays.fill(color, 0, n, 0);
+            cycleLength = 0;
+            cycleWeight = 0;
+            orderLength = 0;
+            for(int root = 0; root < n; root++){
+                if(color[root] != 0 || !graph.isLive(root)) continue;
+                int top = 0;
+                stack[0] = root;
+                position[0] = -1;
+                depth[root] = 0;
+                color[root] = 1;
+                while(top >= 0){
+                    int v = stack[top];
+                    int pos = graph.nextEdge(v, position[top]);
+                    if(pos == -1){
+                        color[v] = 2;
+                        order[orderLength++] = v;
+                        top--;
+                        continue;
+                    }
+                    position[top] = pos;
+                    int u = graph.target(v, pos);
+                    if(color[u] == 1){
+                        for(int i = depth[u]; i <= top; i++){
+                            cycle[cycleLength++] = stack[i];
+                            cycleWeight += graph.weightAsLong(stack[i], position[i]);
+                        }
+                        return true;
+                    } else if(color[u] == 0){
+                        color[u] = 1;
+                        stack[++top] = u;
+                        position[top] = -1;
+                        depth[u] = top;
+                    }
+                }
+            }
+            for(int i = 0, j = orderLength - 1; i < j; i++, j--){
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The decomposition of the graph into the strongly connected components, with the cycle of the minimum weight
+     * in every component which has a cycle.
+     *
+     * The edges are copied into the arrays of the outgoing and incoming edges first, so the graph is read once and by one thread.
+     * find runs the iterative Tarjan's algorithm. findParallel first trims the vertices without the edges in or out, as every
+     * such vertex is the component itself, and then splits the rest by the forward-backward algorithm on the ForkJoinPool:
+     * the vertices reached both from the pivot and backwards to it form its component, and the vertices reached only forwards,
+     * only backwards or not at all are split further in parallel, as no component crosses these sets. Every set is marked by
+     * its own label, and the small sets are finished by Tarjan's algorithm. Both ways number the components by their smallest
+     * vertices, so the results are the same.
+     *
+     * The cycle of the component is found over its own edges. The Bellman-Ford search either finds the cycle of the negative
+     * weight, which is reported as it is, or the potentials which make all the weights non-negative without changing the weights
+     * of the cycles. Then Dijkstra's algorithm from every vertex finds the minimum cycle through it.
+     * This takes O(V * E * log V) for the V vertices and the E edges of the component, so it runs only when V * E is at most
+     * cycleBudget. For the larger components the breadth-first search finds the cycle of the fewest edges through their first
+     * vertex in O(E), and minimal is false for them.
+     */
+    static class StrongComponents {
+        static final int SEQUENTIAL = 1 << 12; //The size of the set which is finished by Tarjan's algorithm
+        static final int PARALLEL = 1 << 16; //The number of the slots from which decompose runs in parallel
+        static final int UNASSIGNED = -2; //The component of the vertex which is not found yet
+        static final long CYCLE_BUDGET = 1L << 28; //The default cycleBudget
+
+        int n; //The number of the slots of the graph
+        int[] outOffsets, outTargets, inOffsets, inSources; //The edges from and to every vertex
+        long[] outWeights; //The weights of the edges from every vertex
+        int[] component; //The component of every vertex, -1 for the empty slots
+        int count; //The number of the components
+        int[] offsets, members; //The vertices of every component in the ascending order
+        int[][] cycles; //The minimum cycle of every component, or null if the component has no cycle
+        long[] cycleWeights; //The weight of the minimum cycle of every component
+        boolean[] minimal; //If false, the cycle of the component is only the shortest by the edges, not the minimum
+        long cycleBudget = CYCLE_BUDGET; //The most vertices times the edges of the component whose minimum cycle is searched
+
+        int[] label; //The set of every vertex in the parallel search, -1 for the found ones
+        int[] index, low; //The numbers of Tarjan's algorithm
+        long[] dist, potential; //The distances of the searches for the cycles and the potentials making the weights non-negative
+        int[] parent, parentEdge; //The previous vertex and the last edge of the path found to every vertex
+        int[] seen; //The number of the search in which the vertex was reached
+        int copied; //The number of the edges copied so far by copyEdges
+        AtomicInteger nextComponent, nextLabel;
+
+        /**
+         * Finds the components with Tarjan's algorithm.
+         */
+        void find(IndexedAdjacency graph){
+            copyEdges(graph);
+            int[] set = new int[n];
+            int size = 0;
+            for(int v = 0; v < n; v++){
+                if(component[v] == UNASSIGNED) set[size++] = v;
+            }
+            tarjan(set, size, 0);
+            number();
+        }
+
+        /**
+         * Finds the components with the forward-backward algorithm.
+         * @param pool The threads splitting the sets.
+         */
+        void findParallel(IndexedAdjacency graph, ForkJoinPool pool){
+            copyEdges(graph);
+            trim();
+            int[] set = new int[n];
+            int size = 0;
+            for(int v = 0; v < n; v++){
+                if(component[v] == UNASSIGNED) set[size++] = v;
+            }
+            pool.invoke(new SplitTask(Arrays.copyOf(set, size), 0));
+            number();
+        }
+
+        /**
+         * Finds the minimum cycles of all the components.
+         * @param pool The threads searching the components, or null to search them in this thread.
+         */
+        void findCycles(ForkJoinPool pool){
+            cycles = new int[count][];
+            cycleWeights = new long[count];
+            minimal = new boolean[count];
+            dist = new long[n];
+            potential = new long[n];
+            parent = new int[n];
+            parentEdge = new int[n];
+            seen = new int[n];
+            if(pool == null){
+                for(int c = 0; c < count; c++){
+                    findCycle(c);
+                }
+            } else {
+                pool.invoke(new CycleTask(0, count));
+            }
+        }
+
+        /**
+         * Finds the components and their cycles, in parallel on the common pool when the graph is large.
+         */
+        void decompose(IndexedAdjacency graph){
+            if(graph.slots() >= PARALLEL && ForkJoinPool.getCommonPoolParallelism() > 1){
+                findParallel(graph, ForkJoinPool.commonPool());
+                findCycles(ForkJoinPool.commonPool());
+            } else {
+                find(graph);
+                findCycles(null);
+            }
+        }
+
+        /**
+         * @return true if any component has a cycle, after findCycles.
+         */
+        boolean hasCycle(){
+            for(int[] cycle : cycles){
+                if(cycle != null) return true;
+            }
+            return false;
+        }
+
+        private void copyEdges(IndexedAdjacency graph){
+            n = graph.slots();
+            component = new int[n];
+            label = new int[n];
+            index = new int[n];
+            low = new int[n];
+            nextComponent = new AtomicInteger();
+            nextLabel = new AtomicInteger(1);
+            outOffsets = new int[n + 1];
+            inOffsets = new int[n + 1];
+            copied = 0;
+            EdgeVisitor count = (u, weight, bandwidth) -> {
+                inOffsets[u + 1]++;
+                copied++;
+            };
+            for(int v = 0; v < n; v++){
+                outOffsets[v] = copied;
+                if(!graph.isLive(v)){
+                    component[v] = -1;
+                    label[v] = -1;
+                } else {
+                    component[v] = UNASSIGNED;
+                    graph.forEachOut(v, count);
+                }
+            }
+            outOffsets[n] = copied;
+            outTargets = new int[copied];
+            outWeights = new long[copied];
+            inSources = new int[copied];
+            copied = 0;
+            EdgeVisitor copy = (u, weight, bandwidth) -> {
+                outTargets[copied] = u;
+                outWeights[copied++] = weight;
+            };
+            for(int v = 0; v < n; v++){
+                if(graph.isLive(v)) graph.forEachOut(v, copy);
+            }
+            for(int v = 0; v < n; v++){
+                inOffsets[v + 1] += inOffsets[v];
+            }
+            int[] fill = Arrays.copyOf(inOffsets, n);
+            for(int v = 0; v < n; v++){
+                for(int k = outOffsets[v]; k < outOffsets[v + 1]; k++){
+                    inSources[fill[outTargets[k]]++] = v;
+                }
+            }
+        }
+
+        /**
+         * Gives the own components to the vertices which have no edges in or out from the vertices left, until there are none.
+         */
+        private void trim(){
+            int[] in = new int[n], out = new int[n], queue = new int[n];
+            int tail = 0;
+            for(int v = 0; v < n; v++){
+                if(component[v] != UNASSIGNED) continue;
+                for(int k = outOffsets[v]; k < outOffsets[v + 1]; k++){
+                    if(outTargets[k] != v){
+                        out[v]++;
+                        in[outTargets[k]]++;
+                    }
+                }
+            }
+            for(int v = 0; v < n; v++){
+                if(component[v] == UNASSIGNED && (in[v] == 0 || out[v] == 0)){
+                    component[v] = nextComponent.getAndIncrement();
+                    queue[tail++] = v;
+                }
+            }
+            for(int head = 0; head < tail; head++){
+                int v = queue[head];
+                label[v] = -1;
+                for(int k = outOffsets[v]; k < outOffsets[v + 1]; k++){
+                    int u = outTargets[k];
+                    if(u != v && component[u] == UNASSIGNED && --in[u] == 0){
+                        component[u] = nextComponent.getAndIncrement();
+                        queue[tail++] = u;
+                    }
+                }
+                for(int k = inOffsets[v]; k < inOffsets[v + 1]; k++){
+                    int u = inSources[k];
+                    if(u != v && component[u] == UNASSIGNED && --out[u] == 0){
+                        component[u] = nextComponent.getAndIncrement();
+                        queue[tail++] = u;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Runs Tarjan's algorithm over the vertices of the set, using only the edges between the vertices with the given label.
+         * The other threads only touch the vertices of the other sets, so the shared arrays are not written by two threads.
+         */
+        private void tarjan(int[] set, int size, int mark){
+            int[] stack = new int[size], call = new int[size], edge = new int[size];
+            for(int i = 0; i < size; i++){
+                index[set[i]] = 0;
+            }
+            int counter = 0, sp = 0;
+            for(int i = 0; i < size; i++){
+                int root = set[i];
+                if(index[root] != 0) continue;
+                int top = 0;
+                call[0] = root;
+                edge[0] = outOffsets[root];
+                index[root] = low[root] = ++counter;
+                stack[sp++] = root;
+                while(top >= 0){
+                    int v = call[top];
+                    if(edge[top] < outOffsets[v + 1]){
+                        int w = outTargets[edge[top]++];
+                        if(label[w] != mark) continue;
+                        if(index[w] == 0){
+                            index[w] = low[w] = ++counter;
+                            stack[sp++] = w;
+                            call[++top] = w;
+                            edge[top] = outOffsets[w];
+                        } else if(component[w] == UNASSIGNED){
+                            low[v] = Math.min(low[v], index[w]);
+                        }
+                        continue;
+                    }
+                    top--;
+                    if(top >= 0) low[call[top]] = Math.min(low[call[top]], low[v]);
+                    if(low[v] == index[v]){
+                        int c = nextComponent.getAndIncrement();
+                        int w;
+                        do {
+                            w = stack[--sp];
+                            component[w] = c;
+                        } while(w != v);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Numbers the components by their smallest vertices and groups their vertices.
+         */
+        private void number(){
+            count = nextComponent.get();
+            int[] renumber = new int[count];
+            Arrays.fill(renumber, -1);
+            offsets = new int[count + 1];
+            int next = 0;
+            for(int v = 0; v < n; v++){
+                int c = component[v];
+                if(c < 0) continue;
+                if(renumber[c] == -1) renumber[c] = next++;
+                component[v] = renumber[c];
+                offsets[component[v] + 1]++;
+            }
+            for(int c = 0; c < count; c++){
+                offsets[c + 1] += offsets[c];
+            }
+            members = new int[offsets[count]];
+            int[] fill = Arrays.copyOf(offsets, count);
+            for(int v = 0; v < n; v++){
+                if(component[v] >= 0) members[fill[component[v]]++] = v;
+            }
+            label = index = low = null;
+        }
+
+        /**
+         * Splits the set of the vertices with the given label by the component of its first vertex.
+         */
+        class SplitTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            final int[] set;
+            final int mark;
+
+            SplitTask(int[] set, int mark) {
+                this.set = set;
+                this.mark = mark;
+            }
+
+            @Override
+            protected void compute() {
+                if(set.length <= SEQUENTIAL){
+                    tarjan(set, set.length, mark);
+                    return;
+                }
+                int pivot = set[0];
+                int forward = nextLabel.getAndIncrement(), backward = nextLabel.getAndIncrement();
+                int[] queue = new int[set.length];
+                int tail = 0;
+                label[pivot] = forward;
+                queue[tail++] = pivot;
+                for(int head = 0; head < tail; head++){
+                    int v = queue[head];
+                    for(int k = outOffsets[v]; k < outOffsets[v + 1]; k++){
+                        int u = outTargets[k];
+                        if(label[u] == mark){
+                            label[u] = forward;
+                            queue[tail++] = u;
+                        }
+                    }
+                }
+                int c = nextComponent.getAndIncrement();
+                tail = 0;
+                label[pivot] = -1;
+                component[pivot] = c;
+                queue[tail++] = pivot;
+                for(int head = 0; head < tail; head++){
+                    int v = queue[head];
+                    for(int k = inOffsets[v]; k < inOffsets[v + 1]; k++){
+                        int u = inSources[k];
+                        if(label[u] == forward){
+                            label[u] = -1;
+                            component[u] = c;
+                            queue[tail++] = u;
+                        } else if(label[u] == mark){
+                            label[u] = backward;
+                            queue[tail++] = u;
+                        }
+                    }
+                }
+                int[] sizes = new int[3];
+                for(int v : set){
+                    if(label[v] == forward) sizes[0]++;
+                    else if(label[v] == backward) sizes[1]++;
+                    else if(label[v] == mark) sizes[2]++;
+                }
+                int[][] parts = {new int[sizes[0]], new int[sizes[1]], new int[sizes[2]]};
+                int[] marks = {forward, backward, mark};
+                Arrays.fill(sizes, 0);
+                for(int v : set){
+                    for(int p = 0; p < 3; p++){
+                        if(label[v] == marks[p]) parts[p][sizes[p]++] = v;
+                    }
+                }
+                ArrayList<SplitTask> tasks = new ArrayList<>();
+                for(int p = 0; p < 3; p++){
+                    if(parts[p].length > 0) tasks.add(new SplitTask(parts[p], marks[p]));
+                }
+                invokeAll(tasks);
+            }
+        }
+
+        /**
+         * Finds the minimum cycles of the components from the given range, splitting it in halves until one component is left.
+         */
+        class CycleTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            final int from, to;
+
+            CycleTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if(to - from > 1){
+                    int mid = (from + to) >>> 1;
+                    invokeAll(new CycleTask(from, mid), new CycleTask(mid, to));
+                } else if(to > from){
+                    findCycle(from);
+                }
+            }
+        }
+
+        /**
+         * Finds the minimum cycle of the component, or the negative one if there is such a cycle.
+         * If the component is too large for cycleBudget, finds the shortest cycle through its first vertex.
+         */
+        private void findCycle(int c){
+            int first = offsets[c], size = offsets[c + 1] - first;
+            minimal[c] = true;
+            if(size == 1){
+                int v = members[first];
+                for(int k = outOffsets[v]; k < outOffsets[v + 1]; k++){
+                    if(outTargets[k] == v && (cycles[c] == null || outWeights[k] < cycleWeights[c])){
+                        cycles[c] = new int[]{v};
+                        cycleWeights[c] = outWeights[k];
+                    }
+                }
+                return;
+            }
+            long edges = 0;
+            for(int i = first; i < first + size; i++){
+                int v = members[i];
+                for(int k = outOffsets[v]; k < outOffsets[v + 1]; k++){
+                    if(component[outTargets[k]] == c) edges++;
+                }
+            }
+            if(size * edges > cycleBudget){
+                minimal[c] = false;
+                shortestCycle(c);
+                return;
+            }
+            for(int i = first; i < first + size; i++){
+                dist[members[i]] = 0;
+                parent[members[i]] = -1;
+            }
+            int changed = -1;
+            for(int round = 0; round <= size; round++){
+                changed = -1;
+                for(int i = first; i < first + size; i++){
+                    int v = members[i];
+                    for(int k = outOffsets[v]; k < outOffsets[v + 1]; k++){
+                        int u = outTargets[k];
+                        if(component[u] == c && dist[v] + outWeights[k] < dist[u]){
+                            dist[u] = dist[v] + outWeights[k];
+                            parent[u] = v;
+                            parentEdge[u] = k;
+                            changed = u;
+                        }
+                    }
+                }
+                if(changed == -1) break;
+            }
+            if(changed != -1){
+                negativeCycle(c, changed, size);
+                return;
+            }
+            for(int i = first; i < first + size; i++){
+                potential[members[i]] = dist[members[i]];
+            }
+            ContractionHierarchy.LongHeap heap = new ContractionHierarchy.LongHeap();
+            long best = Long.MAX_VALUE;
+            int search = 0;
+            for(int i = first; i < first + size; i++){
+                int s = members[i];
+                search++;
+                heap.size = 0;
+                seen[s] = search;
+                dist[s] = 0;
+                heap.push(0, s);
+                while(heap.size > 0 && heap.topKey() < best){
+                    long d = heap.topKey();
+                    int v = heap.pop();
+                    if(d > dist[v]) continue;
+                    for(int k = outOffsets[v]; k < outOffsets[v + 1]; k++){
+                        int u = outTargets[k];
+                        if(component[u] != c) continue;
+                        long newDist = d + outWeights[k] + potential[v] - potential[u];
+                        if(u == s){
+                            if(newDist < best){
+                                best = newDist;
+                                cycles[c] = path(s, v);
+                                cycleWeights[c] = newDist;
+                            }
+                        } else if(seen[u] != search || newDist < dist[u]){
+                            seen[u] = search;
+                            dist[u] = newDist;
+                            parent[u] = v;
+                            heap.push(newDist, u);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Finds the cycle of the fewest edges through the first vertex of the component by the breadth-first search.
+         */
+        private void shortestCycle(int c){
+            int first = offsets[c], size = offsets[c + 1] - first, s = members[first];
+            int[] queue = new int[size];
+            int head = 0, tail = 0;
+            queue[tail++] = s;
+            seen[s] = 1;
+            while(head < tail){
+                int v = queue[head++];
+                for(int k = outOffsets[v]; k < outOffsets[v + 1]; k++){
+                    int u = outTargets[k];
+                    if(component[u] != c) continue;
+                    if(u == s){
+                        int[] cycle = path(s, v);
+                        long weight = outWeights[k];
+                        for(int i = 1; i < cycle.length; i++){
+                            weight += outWeights[parentEdge[cycle[i]]];
+                        }
+                        cycles[c] = cycle;
+                        cycleWeights[c] = weight;
+                        return;
+                    }
+                    if(seen[u] == 0){
+                        seen[u] = 1;
+                        parent[u] = v;
+                        parentEdge[u] = k;
+                        queue[tail++] = u;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return The vertices of the path found by the last search from the start to the given vertex.
+         */
+        private int[] path(int start, int end){
+            int length = 1;
+            for(int v = end; v != start; v = parent[v]){
+                length++;
+            }
+            int[] path = new int[length];
+            for(int v = end, i = length - 1; i >= 0; i--){
+                path[i] = v;
+                if(i > 0) v = parent[v];
+            }
+            return path;
+        }
+
+        /**
+         * Takes the negative cycle from the parents of the Bellman-Ford search.
+         * @param changed The vertex improved in the last round, from which the cycle is reached by the parents.
+         */
+        private void negativeCycle(int c, int changed, int size){
+            int start = changed;
+            for(int i = 0; i < size; i++){
+                start = parent[start];
+            }
+            long weight = 0;
+            int length = 0;
+            int v = start;
+            do {
+                weight += outWeights[parentEdge[v]];
+                length++;
+                v = parent[v];
+            } while(v != start);
+            int[] cycle = new int[length];
+            for(int i = length - 1; i >= 0; i--){
+                cycle[i] = v;
+                v = parent[v];
+            }
+            cycles[c] = cycle;
+            cycleWeights[c] = weight;
+        }
+    }
+
+    /**
+     * The topological order of the FlatMatrixGraph maintained under the insertions of the edges with the Pearce-Kelly algorithm.
+     * Every vertex has its number in the order, and every edge goes from the smaller number to the greater one.
+     * When the inserted edge breaks this, only the vertices between its ends are searched and renumbered,
+     * and if the search from the end of the edge reaches its beginning, the edge closes the cycle, which is remembered.
+     *
+     * So the question if the graph is acyclic is answered at once. The removals do not break the order,
+     * but when the graph has the cycle, the removal which may break the cycle makes the state unknown,
+     * and the next question runs the full search with CycleFinder.
+     */
+    static class IncrementalTopologicalOrder {
+        static final int ACYCLIC = 0, CYCLIC = 1, UNKNOWN = 2;
+
+        final FlatMatrixGraph<?, ?> graph; //The graph the order is maintained for
+        int state; //ACYCLIC, CYCLIC or UNKNOWN
+        int[] ord = new int[0]; //The number of every vertex in the order
+        int nextOrd; //The number greater than all the numbers in the order
+        int[] cycle = new int[0]; //The vertices of the known cycle
+        int cycleLength; //The number of the vertices of the known cycle
+        int[] visited = new int[0]; //The number of the search in which the vertex was visited
+        int search; //The number of the current search
+        int[] parent = new int[0]; //The vertex from which the vertex was reached in the forward search
+        int[] stack = new int[0]; //The stack of the searches
+        int[] forward = new int[0], backward = new int[0]; //The vertices found by the searches
+        long[] sorted = new long[0]; //The order numbers packed with the vertices, used to sort them
+        int[] pool = new int[0]; //The order numbers which are given to the found vertices again
+
+        IncrementalTopologicalOrder(FlatMatrixGraph<?, ?> graph) {
+            this.graph = graph;
+            state = UNKNOWN;
+            ensureCapacity(graph.slots());
+        }
+
+        private void ensureCapacity(int n){
+            if(n <= ord.length) return;
+            int cap = Math.max(n, ord.length * 2);
+            ord = Arrays.copyOf(ord, cap);
+            cycle = Arrays.copyOf(cycle, cap);
+            visited = new int[cap];
+            search = 0;
+            parent = new int[cap];
+            stack = new int[cap];
+            forward = new int[cap];
+            backward = new int[cap];
+            sorted = new long[cap];
+            pool = new int[cap];
+        }
+
+        /**
+         * Resolves the unknown state and tells if the graph has the cycle.
+         * @return true if the graph has the cycle, then it is in cycle.
+         */
+        boolean hasCycle(){
+            if(state == UNKNOWN){
+                CycleFinder finder = new CycleFinder();
+                ensureCapacity(graph.slots());
+                if(finder.find(graph)){
+                    cycleLength = finder.cycleLength;
+                    System.arraycopy(finder.cycle, 0, cycle, 0, cycleLength);
+                    state = CYCLIC;
+                } else {
+                    for(int k = 0; k < finder.orderLength; k++){
+                        ord[finder.order[k]] = k;
+                    }
+                    nextOrd = finder.orderLength;
+                    state = ACYCLIC;
+                }
+            }
+            return state == CYCLIC;
+        }
+
+        /**
+         * @return The total weight of the known cycle.
+         */
+        long cycleWeight(){
+            long weight = 0;
+            for(int i = 0; i < cycleLength; i++){
+                weight += graph.weightBits(graph.cell(cycle[i], cycle[(i + 1) % cycleLength]));
+            }
+            return weight;
+        }
+
+        /**
+         * The new vertex has no edges, so it is put to the end of the order.
+         */
+        void vertexAdded(int v){
+            ensureCapacity(v + 1);
+            ord[v] = nextOrd++;
+        }
+
+        /**
+         * Updates the order after the vertex is removed.
+         * @param v The index of the removed vertex.
+         * @param shifted true if the vertices after it got their indices reduced by one.
+         */
+        void vertexRemoved(int v, boolean shifted){
+            if(state == CYCLIC){
+                boolean onCycle = false;
+                for(int i = 0; i < cycleLength; i++){
+                    if(cycle[i] == v) onCycle = true;
+                    else if(shifted && cycle[i] > v) cycle[i]--;
+                }
+                if(onCycle) state = UNKNOWN;
+            }
+            if(shifted){
+                System.arraycopy(ord, v + 1, ord, v, graph.slots() - v);
+            }
+        }
+
+        /**
+         * Moves the order numbers and the cycle to the new indices after the compaction.
+         * @param newIndex The new index of every old slot, -1 for the free ones.
+         */
+        void compacted(int[] newIndex){
+            for(int i = 0; i < newIndex.length; i++){
+                if(newIndex[i] != -1) ord[newIndex[i]] = ord[i];
+            }
+            if(state != CYCLIC) return;
+            for(int i = 0; i < cycleLength; i++){
+                cycle[i] = newIndex[cycle[i]];
+            }
+        }
+
+        /**
+         * Checks if the removed edge was on the known cycle.
+         */
+        void edgeRemoved(int from, int to){
+            if(state != CYCLIC) return;
+            for(int i = 0; i < cycleLength; i++){
+                if(cycle[i] == from && cycle[(i + 1) % cycleLength] == to){
+                    state = UNKNOWN;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * In the transposed graph the reversed order is topological, and the reversed cycle is the cycle.
+         */
+        void transposed(){
+            if(state == ACYCLIC){
+                nextOrd = 0;
+                for(int i = 0; i < graph.slots(); i++){
+                    ord[i] = -ord[i];
+                    if(graph.isLive(i)) nextOrd = Math.max(nextOrd, ord[i] + 1);
+                }
+            } else if(state == CYCLIC){
+                for(int i = 0, j = cycleLength - 1; i < j; i++, j--){
+                    int tmp = cycle[i];
+                    cycle[i] = cycle[j];
+                    cycle[j] = tmp;
+                }
+            }
+        }
+
+        /**
+         * Restores the order after the edge is inserted, or remembers the cycle closed by the edge.
+         * @param from The index of the vertex from which the edge begins.
+         * @param to The index of the vertex at which the edge ends.
+         */
+        void edgeAdded(int from, int to){
+            if(state != ACYCLIC) return;
+            if(from == to){
+                cycle[0] = from;
+                cycleLength = 1;
+                state = CYCLIC;
+                return;
+            }
+            int lower = ord[to], upper = ord[from];
+            if(lower > upper) return;
+            search++;
+            int forwardCount = searchForward(to, from, upper);
+            if(forwardCount == -1){
+                cycleLength = 0;
+                for(int v = from; v != -1; v = parent[v]){
+                    cycle[cycleLength++] = v;
+                }
+                for(int i = 0, j = cycleLength - 1; i < j; i++, j--){
+                    int tmp = cycle[i];
+                    cycle[i] = cycle[j];
+                    cycle[j] = tmp;
+                }
+                state = CYCLIC;
+                return;
+            }
+            int backwardCount = searchBackward(from, lower);
+            reorder(forwardCount, backwardCount);
+        }
+
+        /**
+         * The DFS from the end of the new edge over the vertices numbered below its beginning.
+         * @return The number of the found vertices, or -1 if the beginning of the edge is reached.
+         */
+        private int searchForward(int start, int target, int upper){
+            int count = 0, top = 0;
+            stack[top++] = start;
+            visited[start] = search;
+            parent[start] = -1;
+            while(top > 0){
+                int v = stack[--top];
+                forward[count++] = v;
+                for(int u = graph.nextTarget(v, 0); u != -1; u = graph.nextTarget(v, u + 1)){
+                    if(u == target){
+                        parent[u] = v;
+                        return -1;
+                    }
+                    if(visited[u] != search && ord[u] < upper){
+                        visited[u] = search;
+                        parent[u] = v;
+                        stack[top++] = u;
+                    }
+                }
+            }
+            return count;
+        }
+
+        /**
+         * The DFS backwards from the beginning of the new edge over the vertices numbered above its end.
+         * @return The number of the found vertices.
+         */
+        private int searchBackward(int start, int lower){
+            int count = 0, top = 0;
+            stack[top++] = start;
+            visited[start] = search;
+            while(top > 0){
+                int v = stack[--top];
+                backward[count++] = v;
+                for(int u = graph.nextSource(v, 0); u != -1; u = graph.nextSource(v, u + 1)){
+                    if(visited[u] != search && ord[u] > lower){
+                        visited[u] = search;
+                        stack[top++] = u;
+                    }
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Gives the smallest of the order numbers of the found vertices to the vertices found backwards, and the rest
+         * to the vertices found forwards, keeping the order inside both groups.
+         */
+        private void reorder(int forwardCount, int backwardCount){
+            int total = 0;
+            for(int i = 0; i < backwardCount; i++){
+                sorted[total++] = ((long) ord[backward[i]] << 32) | backward[i];
+            }
+            Arrays.sort(sorted, 0, backwardCount);
+            for(int i = 0; i < forwardCount; i++){
+                sorted[total++] = ((long) ord[forward[i]] << 32) | forward[i];
+            }
+            Arrays.sort(sorted, backwardCount, total);
+            for(int i = 0; i < total; i++){
+                pool[i] = (int) (sorted[i] >> 32);
+            }
+            Arrays.sort(pool, 0, total);
+            for(int i = 0; i < total; i++){
+                ord[(int) sorted[i]] = pool[i];
+            }
+        }
+    }
+
+    /**
+     * The transitive closure of the FlatMatrixGraph kept as the bit matrix with one row of longs for every slot:
+     * the bit j of the row i is set if there is the path of at least one edge from i to j.
+     *
+     * The closure is built by Warshall's algorithm, which adds the whole row k to every row which reaches k,
+     * 64 columns at a time. Then the added edge u -> v is applied in place: every row which reaches u, and the row u
+     * itself, gets the row v and the bit v. The removal of the edge or the vertex and the transposition can break
+     * the paths, so they only mark the closure as stale, and it is built again by the next query.
+     */
+    static class TransitiveClosure {
+        final FlatMatrixGraph<?, ?> graph; //The graph the closure is maintained for
+        long[] reach = new long[0]; //The rows of the closure, words longs each
+        int words; //The number of longs in every row
+        int rows; //The number of the rows the closure is reserved for
+        boolean valid; //False if the closure must be built again
+        long[] added = new long[0]; //The copy of the row added by edgeAdded, as the row itself may change
+
+        TransitiveClosure(FlatMatrixGraph<?, ?> graph) {
+            this.graph = graph;
+        }
+
+        private void ensureCapacity(int n){
+            if(n <= rows) return;
+            int newRows = Math.max(n, rows * 2), newWords = (newRows + 63) >>> 6;
+            long[] newReach = new long[newRows * newWords];
+            for(int i = 0; i < rows; i++){
+                System.arraycopy(reach, i * words, newReach, i * newWords, words);
+            }
+            reach = newReach;
+            words = newWords;
+            rows = newRows;
+        }
+
+        /**
+         * Tells if there is the path from one vertex to the other, building the closure if it is stale.
+         * Every vertex is reachable from itself.
+         */
+        boolean reachable(int from, int to){
+            if(from == to) return true;
+            if(!valid) build();
+            return (reach[from * words + (to >>> 6)] & (1L << to)) != 0;
+        }
+
+        /**
+         * Builds the closure from the edges of the graph by Warshall's algorithm.
+         */
+        void build(){
+            int n = graph.slots();
+            ensureCapacity(n);
+            Arrays.fill(reach, 0, n * words, 0L);
+            for(int i = 0; i < n; i++){
+                if(!graph.isLive(i)) continue;
+                int base = i * words;
+                for(int j = graph.nextTarget(i, 0); j != -1; j = graph.nextTarget(i, j + 1)){
+                    reach[base + (j >>> 6)] |= 1L << j;
+                }
+            }
+            for(int k = 0; k < n; k++){
+                int word = k >>> 6, kBase = k * words;
+                long bit = 1L << k;
+                for(int i = 0; i < n; i++){
+                    int base = i * words;
+                    if((reach[base + word] & bit) != 0){
+                        for(int w = 0; w < words; w++){
+                            reach[base + w] |= reach[kBase + w];
+                        }
+                    }
+                }
+            }
+            valid = true;
+        }
+
+        /**
+         * The new vertex has no edges, so its row and column are cleared, as the slot may be used before.
+         */
+        void vertexAdded(int v){
+            if(!valid) return;
+            ensureCapacity(v + 1);
+            int n = graph.slots();
+            Arrays.fill(reach, v * words, (v + 1) * words, 0L);
+            for(int i = 0; i < n; i++){
+                reach[i * words + (v >>> 6)] &= ~(1L << v);
+            }
+        }
+
+        /**
+         * Adds the paths through the new edge to every row which reaches its beginning.
+         */
+        void edgeAdded(int from, int to){
+            if(!valid) return;
+            int n = graph.slots(), fromWord = from >>> 6, toBase = to * words;
+            long fromBit = 1L << from;
+            if(added.length < words) added = new long[words];
+            System.arraycopy(reach, toBase, added, 0, words);
+            added[to >>> 6] |= 1L << to;
+            for(int i = 0; i < n; i++){
+                int base = i * words;
+                if(i != from && (reach[base + fromWord] & fromBit) == 0) continue;
+                for(int w = 0; w < words; w++){
+                    reach[base + w] |= added[w];
+                }
+            }
+        }
+
+        void invalidate(){
+            valid = false;
+        }
+    }
+
+    /**
+     * The breadth-first search which tells if one vertex of the FlatMatrixGraph is reachable from the other.
+     * The visited vertices are kept in the bitset, and the new vertices of the row are found 64 at a time
+     * by masking the row of the matrix with the bitset. The arrays are reused by the next searches.
+     */
+    static class ReachabilitySearch {
+        long[] visited = new long[0]; //The bitset of the visited vertices
+        int[] queue = new int[0]; //The queue of the search
+
+        /**
+         * @return true if there is the path from one vertex to the other, every vertex is reachable from itself.
+         */
+        boolean reachable(FlatMatrixGraph<?, ?> graph, int from, int to){
+            if(from == to) return true;
+            int n = graph.slots(), words = (n + 63) >>> 6;
+            if(queue.length < n){
+                queue = new int[Math.max(n, queue.length * 2)];
+                visited = new long[(queue.length + 63) >>> 6];
+            }
+            Arrays.fill(visited, 0, words, 0L);
+            visited[from >>> 6] |= 1L << from;
+            int head = 0, tail = 0;
+            queue[tail++] = from;
+            while(head < tail){
+                int v = queue[head++];
+                if(graph.transposed){
+                    for(int u = graph.nextTarget(v, 0); u != -1; u = graph.nextTarget(v, u + 1)){
+                        if((visited[u >>> 6] & (1L << u)) != 0) continue;
+                        if(u == to) return true;
+                        visited[u >>> 6] |= 1L << u;
+                        queue[tail++] = u;
+                    }
+                    continue;
+                }
+                int base = v * graph.rowWords;
+                for(int w = 0; w < words; w++){
+                    long bits = graph.present[base + w] & graph.live[w] & ~visited[w];
+                    if(bits == 0) continue;
+                    if(w == to >>> 6 && (bits & (1L << to)) != 0) return true;
+                    visited[w] |= bits;
+                    while(bits != 0){
+                        queue[tail++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The table of the vertex names read as bytes. Every distinct name gets its index once, and the name is compared
+     * and hashed right in the input buffer, so no String is created to look it up.
+     */
+    static class NameTable {
+        byte[] pool = new byte[1 << 12]; //The bytes of all the names
+        int poolSize; //The number of the used bytes of the pool
+        int[] start = new int[64], length = new int[64], hash = new int[64]; //The position, length and hash of every name
+        int size; //The number of the names
+        int[] table = new int[128]; //The open addressing hash table of the indices of the names plus one, 0 for the empty cell
+
+        static int hash(ByteBuffer buf, int from, int to){
+            int h = 0x811C9DC5;
+            for(int i = from; i < to; i++){
+                h = (h ^ buf.get(i)) * 0x01000193;
+            }
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * Finds the index of the name which is at the given position in the buffer.
+         * @param add If true, the name is added when it is not found.
+         * @return The index of the name, or -1.
+         */
+        int find(ByteBuffer buf, int from, int to, boolean add){
+            int h = hash(buf, from, to);
+            int mask = table.length - 1;
+            for(int cell = h & mask; ; cell = (cell + 1) & mask){
+                int index = table[cell] - 1;
+                if(index == -1){
+                    if(!add) return -1;
+                    index = size;
+                    store(buf, from, to, h);
+                    table[cell] = index + 1;
+                    if(size * 2 > table.length) rehash();
+                    return index;
+                }
+                if(hash[index] == h && equals(index, buf, from, to)) return index;
+            }
+        }
+
+        private boolean equals(int index, ByteBuffer buf, int from, int to){
+            if(length[index] != to - from) return false;
+            int s = start[index];
+            for(int i = from; i < to; i++){
+                if(pool[s++] != buf.get(i)) return false;
+            }
+            return true;
+        }
+
+        private void store(ByteBuffer buf, int from, int to, int h){
+            int index = size;
+            if(index == start.length){
+                start = Arrays.copyOf(start, index * 2);
+                length = Arrays.copyOf(length, index * 2);
+                hash = Arrays.copyOf(hash, index * 2);
+            }
+            if(poolSize + to - from > pool.length){
+                pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + to - from));
+            }
+            start[index] = poolSize;
+            length[index] = to - from;
+            hash[index] = h;
+            for(int i = from; i < to; i++){
+                pool[poolSize++] = buf.get(i);
+            }
+            size++;
+        }
+
+        private void rehash(){
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for(int index = 0; index < size; index++){
+                int cell = hash[index] & mask;
+                while(table[cell] != 0) cell = (cell + 1) & mask;
+                table[cell] = index + 1;
+            }
+        }
+
+        /**
+         * @return The name with the given index as the String.
+         */
+        String name(int index){
+            return new String(pool, start[index], length[index], StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * The commands of the solveA protocol parsed into the array of ints: the code of the instruction followed by its operands,
+     * where the vertices are given by the indices of their names in the NameTable, or -1 for the unknown names.
+     * The values of the names added to the table while parsing the batch are kept in the order of their indices.
+     */
+    static class CommandBatch {
+        static final int ADD_VERTEX = 0, REMOVE_VERTEX = 1, ADD_EDGE = 2, REMOVE_EDGE = 3, HAS_EDGE = 4, IS_ACYCLIC = 5, TRANSPOSE = 6, REACHABLE = 7, METRICS = 8, COMPONENTS = 9;
+
+        int[] codes = new int[1 << 12]; //The instructions and their operands
+        int size; //The number of the used ints
+        ArrayList<String> newNames = new ArrayList<>(); //The values of the new names
+        boolean last; //True for the batch after which there are no more commands
+        NumberFormatException error; //The wrong number which stopped the parsing, thrown after the commands before it
+
+        void add(int code){
+            if(size == codes.length){
+                codes = Arrays.copyOf(codes, size * 2);
+            }
+            codes[size++] = code;
+        }
+
+        void clear(){
+            size = 0;
+            newNames.clear();
+            last = false;
+            error = null;
+        }
+    }
+
+    /**
+     * Parses the commands of the solveA protocol straight from the bytes of the input into the CommandBatch.
+     * The instructions are recognized by their bytes, the numbers are parsed in place and the vertex names are
+     * looked up in the NameTable, so the only Strings created are the values of the new names.
+     * The wrong number stops the parsing: it is saved in the batch without its command, like Integer.parseInt fails.
+     */
+    static class CommandParser {
+        static final byte[] ADD_VERTEX = "ADD_VERTEX".getBytes(StandardCharsets.US_ASCII);
+        static final byte[] REMOVE_VERTEX = "REMOVE_VERTEX".getBytes(StandardCharsets.US_ASCII);
+        static final byte[] ADD_EDGE = "ADD_EDGE".getBytes(StandardCharsets.US_ASCII);
+        static final byte[] REMOVE_EDGE = "REMOVE_EDGE".getBytes(StandardCharsets.US_ASCII);
+        static final byte[] HAS_EDGE = "HAS_EDGE".getBytes(StandardCharsets.US_ASCII);
+        static final byte[] IS_ACYCLIC = "IS_ACYCLIC".getBytes(StandardCharsets.US_ASCII);
+        static final byte[] TRANSPOSE = "TRANSPOSE".getBytes(StandardCharsets.US_ASCII);
+        static final byte[] REACHABLE = "REACHABLE".getBytes(StandardCharsets.US_ASCII);
+        static final byte[] METRICS = "METRICS".getBytes(StandardCharsets.US_ASCII);
+        static final byte[] COMPONENTS = "COMPONENTS".getBytes(StandardCharsets.US_ASCII);
+
+        final NameTable names = new NameTable(); //The indices of the names
+        ByteBuffer buf; //The buffer being parsed
+        int pos, limit; //The position of the parser and the end of the parsed part of the buffer
+        int tokenStart, tokenEnd; //The bounds of the last token
+
+        /**
+         * Returns the end of the part of the buffer which contains only the complete lines.
+         * @param last If true, the input ends with the buffer, so all of it is complete.
+         */
+        static int completeLines(ByteBuffer buffer, boolean last){
+            int end = buffer.limit();
+            if(!last){
+                while(end > buffer.position() && buffer.get(end - 1) != '\n') end--;
+            }
+            return end;
+        }
+
+        /**
+         * Parses the commands from the given part of the buffer until it ends or the batch has at least maxCodes ints.
+         * @param from The position of the first byte to parse.
+         * @param to The end of the part, which must end at the end of the line.
+         * @return The position after the last parsed command.
+         */
+        int parse(ByteBuffer buffer, int from, int to, CommandBatch batch, int maxCodes){
+            buf = buffer;
+            pos = from;
+            limit = to;
+            int names = this.names.size;
+            while(batch.size < maxCodes && batch.error == null && nextToken()){
+                if(matches(ADD_VERTEX)){
+                    batch.add(CommandBatch.ADD_VERTEX);
+                    nextToken();
+                    batch.add(this.names.find(buf, tokenStart, tokenEnd, true));
+                } else if(matches(REMOVE_VERTEX)){
+                    batch.add(CommandBatch.REMOVE_VERTEX);
+                    batch.add(name());
+                } else if(matches(ADD_EDGE)){
+                    int command = batch.size;
+                    batch.add(CommandBatch.ADD_EDGE);
+                    batch.add(name());
+                    batch.add(name());
+                    if(!nextToken()) tokenStart = tokenEnd = pos;
+                    try {
+                        batch.add(parseInt());
+                    } catch (NumberFormatException e){
+                        batch.size = command;
+                        batch.error = e;
+                    }
+                } else if(matches(REMOVE_EDGE)){
+                    batch.add(CommandBatch.REMOVE_EDGE);
+                    batch.add(name());
+                    batch.add(name());
+                } else if(matches(HAS_EDGE)){
+                    batch.add(CommandBatch.HAS_EDGE);
+                    batch.add(name());
+                    batch.add(name());
+                } else if(matches(IS_ACYCLIC)){
+                    batch.add(CommandBatch.IS_ACYCLIC);
+                } else if(matches(TRANSPOSE)){
+                    batch.add(CommandBatch.TRANSPOSE);
+                } else if(matches(REACHABLE)){
+                    batch.add(CommandBatch.REACHABLE);
+                    batch.add(name());
+                    batch.add(name());
+                } else if(matches(METRICS)){
+                    batch.add(CommandBatch.METRICS);
+                } else if(matches(COMPONENTS)){
+                    batch.add(CommandBatch.COMPONENTS);
+                }
+            }
+            for(int i = names; i < this.names.size; i++){
+                batch.newNames.add(this.names.name(i));
+            }
+            while(pos < limit && (buf.get(pos) & 0xff) <= ' ') pos++;
+            return pos;
+        }
+
+        /**
+         * Moves to the next token.
+         * @return false if there are no more tokens.
+         */
+        private boolean nextToken(){
+            while(pos < limit && (buf.get(pos) & 0xff) <= ' ') pos++;
+            if(pos == limit) return false;
+            tokenStart = pos;
+            while(pos < limit && (buf.get(pos) & 0xff) > ' ') pos++;
+            tokenEnd = pos;
+            return true;
+        }
+
+        private boolean matches(byte[] word){
+            if(tokenEnd - tokenStart != word.length) return false;
+            for(int i = 0; i < word.length; i++){
+                if(buf.get(tokenStart + i) != word[i]) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Reads the next token as the name of the vertex.
+         * @return The index of the name, or -1 if it was never added.
+         */
+        private int name(){
+            nextToken();
+            return names.find(buf, tokenStart, tokenEnd, false);
+        }
+
+        /**
+         * Parses the last token as the int. The short plain numbers are parsed in place, and the rest are given
+         * to Integer.parseInt, so the wrong ones fail the same way.
+         * @throws NumberFormatException If the token is not the int.
+         */
+        private int parseInt(){
+            int i = tokenStart, result = 0;
+            boolean negative = i < tokenEnd && buf.get(i) == '-';
+            if(negative || i < tokenEnd && buf.get(i) == '+') i++;
+            if(i == tokenEnd || tokenEnd - i > 9) return Integer.parseInt(token()); //No digits, or may not fit in the int
+            for(; i < tokenEnd; i++){
+                int digit = buf.get(i) - '0';
+                if(digit < 0 || digit > 9) return Integer.parseInt(token());
+                result = result * 10 + digit;
+            }
+            return negative ? -result : result;
+        }
+
+        /**
+         * @return The last token as the String.
+         */
+        private String token(){
+            byte[] bytes = new byte[tokenEnd - tokenStart];
+            for(int i = 0; i < bytes.length; i++){
+                bytes[i] = buf.get(tokenStart + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Applies the commands of the solveA protocol to the IntMatrixGraph straight from the bytes of the input.
+     * The CommandParser turns the bytes into the CommandBatch of ints, and the batch is applied to the graph with the
+     * primitive indices of the vertices. The input is read by the large reused direct buffers from the channel until its
+     * real end, or memory-mapped when it is the file.
+     *
+     * In the pipelined mode the reading and the parsing of the next batch run in the separate thread, while the current
+     * batch is applied to the graph. Two batches are passed between the threads, so they are not allocated again.
+     *
+     * When the metrics are enabled, the commands of the Graph interface go through the MeteredGraph instead of the primitive
+     * calls, and the other commands time only the call of their algorithm, so METRICS shows the latencies of the graph alone.
+     */
+    static class CommandProcessor {
+        static final int BATCH_CODES = 1 << 16; //The size of the batch at which the parsing stops
+        static final String TOPOLOGY_PROPERTY = "graph.topology"; //Turns on the maintained topological order for IS_ACYCLIC
+        static final String CLOSURE_PROPERTY = "graph.closure"; //Turns on the maintained transitive closure for REACHABLE
+
+        final IntMatrixGraph<String> graph; //The graph the commands are applied to
+        final PrintWriter out; //The output of the answers
+        final CommandParser parser = new CommandParser(); //The parser of the input
+        final ArrayList<String> names = new ArrayList<>(); //The value of every name index
+        final ArrayList<Vertex<String>> vertices = new ArrayList<>(); //The vertex of every name index
+        final CycleFinder finder = new CycleFinder(); //The search for the cycles
+        final StrongComponents components = new StrongComponents(); //The decomposition answering COMPONENTS
+        final OperationMetrics metrics; //The latencies of the graph operations, dumped by METRICS
+        final MeteredGraph<String, Integer> metered; //The graph wrapped to record the metrics, null if they are disabled
+
+        CommandProcessor(IntMatrixGraph<String> graph, PrintWriter out) {
+            this(graph, out, OperationMetrics.fromSystemProperty());
+        }
+
+        /**
+         * The maintained topological order of the graph is turned on by the system property graph.topology=true,
+         * and the maintained transitive closure by graph.closure=true.
+         */
+        CommandProcessor(IntMatrixGraph<String> graph, PrintWriter out, OperationMetrics metrics) {
+            this.graph = graph;
+            this.out = out;
+            this.metrics = metrics;
+            metered = metrics.enabled ? new MeteredGraph<>(graph, metrics) : null;
+            if(Boolean.getBoolean(TOPOLOGY_PROPERTY)) graph.trackTopologicalOrder();
+            if(Boolean.getBoolean(CLOSURE_PROPERTY)) graph.trackTransitiveClosure();
+        }
+
+        /**
+         * Reads all the commands from the channel through the reused direct buffer, parsing and applying them in turn.
+         */
+        void run(ReadableByteChannel channel) throws Exception {
+            CommandBatch batch = new CommandBatch();
+            ChannelReader reader = new ChannelReader(channel);
+            while(reader.next(parser, batch)){
+                apply(batch);
+            }
+            apply(batch);
+        }
+
+        /**
+         * Reads all the commands from the file, memory-mapping it by the windows of at most 1 GB.
+         */
+        void run(FileChannel file) throws Exception {
+            CommandBatch batch = new CommandBatch();
+            long size = file.size(), offset = 0;
+            while(offset < size){
+                long window = Math.min(size - offset, 1L << 30);
+                MappedByteBuffer map = file.map(FileChannel.MapMode.READ_ONLY, offset, window);
+                int end = CommandParser.completeLines(map, offset + window == size);
+                if(end == 0) throw new Exception("The line is too long!");
+                int processed = 0;
+                while(processed < end){
+                    batch.clear();
+                    processed = parser.parse(map, processed, end, batch, BATCH_CODES);
+                    apply(batch);
+                }
+                offset += processed;
+            }
+        }
+
+        /**
+         * Reads and parses the commands in the separate thread, while this thread applies them.
+         */
+        void runPipelined(ReadableByteChannel channel) throws Exception {
+            BlockingQueue<CommandBatch> parsed = new ArrayBlockingQueue<>(2);
+            BlockingQueue<CommandBatch> free = new ArrayBlockingQueue<>(2);
+            free.add(new CommandBatch());
+            free.add(new CommandBatch());
+            Exception[] failure = new Exception[1];
+            Thread reading = new Thread(() -> {
+                ChannelReader reader = new ChannelReader(channel);
+                try {
+                    boolean more = true;
+                    while(more){
+                        CommandBatch batch = free.take();
+                        more = reader.next(parser, batch);
+                        batch.last = !more;
+                        parsed.put(batch);
+                    }
+                } catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                } catch (Exception e){
+                    failure[0] = e;
+                    CommandBatch end = new CommandBatch();
+                    end.last = true;
+                    parsed.offer(end);
+                }
+            }, "command-parser");
+            reading.setDaemon(true);
+            reading.start();
+            try {
+                while(true){
+                    CommandBatch batch = parsed.take();
+                    if(failure[0] != null) throw failure[0];
+                    apply(batch);
+                    if(batch.last) break;
+                    free.put(batch);
+                }
+            } finally {
+                reading.interrupt();
+            }
+        }
+
+        /**
+         * Applies the parsed commands to the graph, then throws the error of the batch if it has one.
+         */
+        void apply(CommandBatch batch) throws Exception {
+            names.addAll(batch.newNames);
+            while(vertices.size() < names.size()){
+                vertices.add(null);
+            }
+            int[] codes = batch.codes;
+            int i = 0;
+            while(i < batch.size){
+                switch (codes[i++]){
+                    case CommandBatch.ADD_VERTEX: {
+                        int name = codes[i++];
+                        if(vertices.get(name) == null){
+                            vertices.set(name, metered != null ? metered.addVertex(names.get(name)) : graph.addVertex(names.get(name)));
+                        }
+                        break;
+                    }
+                    case CommandBatch.REMOVE_VERTEX: {
+                        int name = codes[i++];
+                        if(metered != null) metered.removeVertex(vertex(name)); else graph.removeVertex(vertex(name));
+                        vertices.set(name, null);
+                        break;
+                    }
+                    case CommandBatch.ADD_EDGE: {
+                        Vertex<String> from = vertex(codes[i++]), to = vertex(codes[i++]);
+                        int weight = codes[i++];
+                        if(metered != null){
+                            metered.addEdge(from, to, weight);
+                        } else {
+                            if(from == null || to == null) throw new Exception("The vertex is null!");
+                            graph.addEdge(from.id, to.id, weight);
+                        }
+                        break;
+                    }
+                    case CommandBatch.REMOVE_EDGE: {
+                        Vertex<String> from = vertex(codes[i++]), to = vertex(codes[i++]);
+                        if(metered != null){
+                            metered.removeEdge(from == null || to == null ? null : metered.findEdge(from.value, to.value));
+                        } else {
+                            if(from == null || to == null || !graph.isSet(from.id, to.id)) throw new Exception("The edge is null!");
+                            graph.disconnect(from.id, to.id);
+                        }
+                        break;
+                    }
+                    case CommandBatch.HAS_EDGE: {
+                        Vertex<String> from = vertex(codes[i++]), to = vertex(codes[i++]);
+                        boolean found;
+                        if(metered != null){
+                            found = metered.hasEdge(from, to);
+                        } else {
+                            if(from == null || to == null) throw new Exception("Some vertices are null");
+                            found = graph.isSet(from.id, to.id);
+                        }
+                        out.println(found ? "TRUE" : "FALSE");
+                        break;
+                    }
+                    case CommandBatch.IS_ACYCLIC: {
+                        long start = metrics.start();
+                        boolean cycle = graph.topology != null ? graph.topology.hasCycle() : finder.find(graph);
+                        metrics.record(OperationMetrics.IS_ACYCLIC, start);
+                        if(!cycle) {
+                            out.println("ACYCLIC");
+                        } else if(graph.topology != null){
+                            printCycle(out, graph, graph.topology.cycle, graph.topology.cycleLength, graph.topology.cycleWeight());
+                        } else {
+                            printCycle(out, graph, finder.cycle, finder.cycleLength, finder.cycleWeight);
+                        }
+                        break;
+                    }
+                    case CommandBatch.TRANSPOSE: {
+                        long start = metrics.start();
+                        graph.transpose();
+                        metrics.record(OperationMetrics.TRANSPOSE, start);
+                        break;
+                    }
+                    case CommandBatch.REACHABLE: {
+                        Vertex<String> from = vertex(codes[i++]), to = vertex(codes[i++]);
+                        if(from == null || to == null) throw new Exception("Some vertices are null");
+                        long start = metrics.start();
+                        boolean reachable = graph.isReachable(from.id, to.id);
+                        metrics.record(OperationMetrics.REACHABLE, start);
+                        out.println(reachable ? "TRUE" : "FALSE");
+                        break;
+                    }
+                    case CommandBatch.METRICS:
+                        metrics.dump(out);
+                        break;
+                    case CommandBatch.COMPONENTS: {
+                        long start = metrics.start();
+                        components.decompose(graph);
+                        metrics.record(OperationMetrics.COMPONENTS, start);
+                        printComponents(out, graph, components);
+                        break;
+                    }
+                }
+            }
+            if(batch.error != null) throw batch.error;
+        }
+
+        private Vertex<String> vertex(int name){
+            return name == -1 ? null : vertices.get(name);
+        }
+    }
+
+    /**
+     * Reads the channel by the reused direct buffer and gives its complete lines to the parser.
+     * The read blocks until there are new bytes or the channel is closed, so the slow pipes are read to their real end.
+     */
+    static class ChannelReader {
+        final ReadableByteChannel channel; //The input
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20); //The bytes read but not parsed yet
+        boolean finished; //True when the end of the channel is reached
+
+        ChannelReader(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        /**
+         * Parses the next batch of the commands, reading the channel when the buffer has no complete lines left.
+         * @return false if the input has ended or has the wrong number, then the batch holds the last commands.
+         */
+        boolean next(CommandParser parser, CommandBatch batch) throws IOException {
+            batch.clear();
+            while(true){
+                int end = CommandParser.completeLines(buffer, finished);
+                if(end > buffer.position()){
+                    buffer.position(parser.parse(buffer, buffer.position(), end, batch, CommandProcessor.BATCH_CODES));
+                    if(batch.error != null) return false;
+                    if(batch.size > 0) return true;
+                }
+                if(finished) return false;
+                buffer.compact();
+                if(!buffer.hasRemaining()){
+                    buffer.flip();
+                    buffer = ByteBuffer.allocateDirect(buffer.capacity() * 2).put(buffer);
+                }
+                finished = channel.read(buffer) == -1;
+                buffer.flip();
+            }
+        }
+    }
+
+    /**
+     * Saves the CsrGraph to the binary file and loads it back by memory-mapping the file.
+     *
+     * The file starts with the header of 32 bytes: the magic number, the version of the format, the number of the vertices,
+     * the number of the edges, the length of the values section and the CRC32 checksum of everything after the header.
+     * Then go the sections: the values of the vertices in the order of their indices, each prefixed with its length,
+     * then outOffsets, targets, inOffsets and sources as ints, and targetWeights and sourceWeights as longs.
+     * Every section starts at the multiple of 8 bytes, and all the numbers are little-endian.
+     *
+     * When the graph is loaded, only the values are read to the heap, the edge arrays are the buffers over the mapped file.
+     */
+    static class GraphSnapshot {
+        static final int MAGIC = 0x47524150; //"GRAP"
+        static final int VERSION = 1;
+        static final int HEADER = 32;
+
+        /**
+         * Writes the graph to the file, replacing it.
+         * @param graph The graph.
+         * @param values The codec of the values of the vertices.
+         * @param file The path of the file.
+         */
+        static <T, E> void save(CsrGraph<T, E> graph, ValueCodec<T> values, Path file) throws IOException {
+            int n = graph.size(), m = graph.edgeCount();
+            ByteArrayOutputStream valueBytes = new ByteArrayOutputStream();
+            DataOutputStream valueData = new DataOutputStream(valueBytes);
+            for(Vertex<T> v : graph.val){
+                byte[] bytes = values.encode(v.value);
+                valueData.writeInt(Integer.reverseBytes(bytes.length));
+                valueData.write(bytes);
+            }
+            long[] sizes = sizes(valueBytes.size(), n, m), offsets = offsets(sizes);
+            try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+                CRC32 crc = new CRC32();
+                ByteBuffer section = map(channel, FileChannel.MapMode.READ_WRITE, offsets, sizes, 0);
+                section.put(valueBytes.toByteArray());
+                crc.update((ByteBuffer) section.flip());
+                IntBuffer[] ints = {graph.outOffsets, graph.targets, graph.inOffsets, graph.sources};
+                for(int i = 0; i < ints.length; i++){
+                    section = map(channel, FileChannel.MapMode.READ_WRITE, offsets, sizes, i + 1);
+                    section.asIntBuffer().put((IntBuffer) ints[i].duplicate().clear());
+                    crc.update(section);
+                }
+                LongBuffer[] longs = {graph.targetWeights, graph.sourceWeights};
+                for(int i = 0; i < longs.length; i++){
+                    section = map(channel, FileChannel.MapMode.READ_WRITE, offsets, sizes, i + 5);
+                    section.asLongBuffer().put((LongBuffer) longs[i].duplicate().clear());
+                    crc.update(section);
+                }
+                ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(m).putLong(sizes[0]).putLong(crc.getValue());
+                header.flip();
+                channel.write(header, 0);
+                channel.force(true);
+            }
+        }
+
+        /**
+         * Reads the graph from the file. The edges stay in the mapped file.
+         * @param file The path of the file.
+         * @param values The codec of the values of the vertices.
+         * @param weights The codec of the weights of the edges.
+         * @param verify If true, the checksum is checked, which reads the whole file once.
+         * @return The loaded graph.
+         */
+        static <T, E> CsrGraph<T, E> load(Path file, ValueCodec<T> values, WeightCodec<E> weights, boolean verify) throws IOException {
+            try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+                ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+                while(header.hasRemaining() && channel.read(header, header.position()) > 0);
+                header.flip();
+                if(header.remaining() < HEADER || header.getInt() != MAGIC) throw new IOException("The file is not a graph snapshot!");
+                int version = header.getInt();
+                if(version != VERSION) throw new IOException("Unsupported snapshot version " + version + "!");
+                int n = header.getInt(), m = header.getInt();
+                long valuesLength = header.getLong(), checksum = header.getLong();
+                long[] sizes = sizes(valuesLength, n, m), offsets = offsets(sizes);
+                if(channel.size() < offsets[6] + sizes[6]) throw new IOException("The snapshot is truncated!");
+                ByteBuffer[] mapped = new ByteBuffer[7];
+                CRC32 crc = new CRC32();
+                for(int i = 0; i < mapped.length; i++){
+                    mapped[i] = map(channel, FileChannel.MapMode.READ_ONLY, offsets, sizes, i);
+                    if(verify) crc.update(mapped[i].duplicate());
+                }
+                if(verify && crc.getValue() != checksum) throw new IOException("The snapshot checksum does not match!");
+                HashMap<T, Integer> id = new HashMap<>(n * 2);
+                ArrayList<Vertex<T>> val = new ArrayList<>(n);
+                ByteBuffer valueSection = mapped[0];
+                for(int i = 0; i < n; i++){
+                    byte[] bytes = new byte[valueSection.getInt()];
+                    valueSection.get(bytes);
+                    T value = values.decode(bytes);
+                    id.put(value, i);
+                    val.add(new Vertex<>(value, i));
+                }
+                return new CsrGraph<>(weights, id, val,
+                        mapped[1].asIntBuffer(), mapped[2].asIntBuffer(), mapped[5].asLongBuffer(),
+                        mapped[3].asIntBuffer(), mapped[4].asIntBuffer(), mapped[6].asLongBuffer());
+            }
+        }
+
+        /**
+         * @return The sizes of the sections in bytes.
+         */
+        private static long[] sizes(long valuesLength, int n, int m){
+            return new long[]{valuesLength, 4L * (n + 1), 4L * m, 4L * (n + 1), 4L * m, 8L * m, 8L * m};
+        }
+
+        /**
+         * @return The offsets of the sections in the file, each rounded up to the multiple of 8.
+         */
+        private static long[] offsets(long[] sizes){
+            long[] offsets = new long[sizes.length];
+            offsets[0] = HEADER;
+            for(int i = 1; i < sizes.length; i++){
+                offsets[i] = (offsets[i - 1] + sizes[i - 1] + 7) & ~7L;
+            }
+            return offsets;
+        }
+
+        private static ByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long[] offsets, long[] sizes, int i) throws IOException {
+            if(sizes[i] > Integer.MAX_VALUE) throw new IOException("The snapshot section is too large to map!");
+            return channel.map(mode, offsets[i], sizes[i]).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * The graph which survives the crash: every change is put to the log before it is made in memory,
+     * and the whole graph is periodically saved as the GraphSnapshot checkpoint, after which the log starts again.
+     * Recovery loads the last checkpoint and replays the log written after it, so it takes time proportional to
+     * the size of the graph plus at most checkpointInterval records.
+     *
+     * The files in the directory are checkpoint-g.bin and wal-g.log, where g is the generation. The checkpoint is
+     * written to the temporary file and renamed, so the newest checkpoint is always complete, and only the log of
+     * the same generation is replayed over it. The directory is synced after the log is created and after the checkpoint
+     * is renamed, so the new names are on the disk too.
+     *
+     * Every record of the log is the length, the operation with its arguments and the CRC32 of them. The vertices are
+     * written by their values, so the records do not depend on the indices. The record with the wrong length or checksum
+     * is the torn end of the log, it and everything after it are dropped.
+     *
+     * The records are collected in memory and written with one fsync for the whole group (group commit): when groupSize
+     * records are pending, or when sync is called. So the change is durable only when the sync which writes it returns:
+     * the changes made after the last sync are lost in the crash, and with groupSize 1 every change is on the disk before
+     * its method returns. If the sync fails, the change which started it is not made, the log is cut back to its last
+     * synced size and the earlier records stay pending for the next sync. If the checkpoint fails, the change which
+     * started it is already made and logged, and the previous generation stays in use.
+     * @param <T> The type of the value of the vertex.
+     * @param <E> The type of the weight of the edge.
+     */
+    static class DurableGraph<T, E> implements Graph<T, E>, Closeable {
+        static final byte ADD_VERTEX = 1, REMOVE_VERTEX = 2, ADD_EDGE = 3, REMOVE_EDGE = 4, TRANSPOSE = 5;
+
+        final SparseGraph<T, E> graph; //The graph in memory, all the reads go to it
+        final ValueCodec<T> values; //Converts the values of the vertices to the bytes of the records
+        final Path dir; //The directory of the checkpoints and the logs
+        final int groupSize; //The number of the records written with one fsync
+        final long checkpointInterval; //The number of the records after which the checkpoint is taken
+        long generation; //The generation of the current checkpoint and log
+        FileChannel log; //The current log, opened for appending
+        ByteBuffer pending = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN); //The records not written yet
+        int pendingRecords; //The number of the records in pending
+        long synced; //The size of the log which is on the disk
+        long sinceCheckpoint; //The number of the records in the current log
+        final CRC32 crc = new CRC32();
+
+        private DurableGraph(SparseGraph<T, E> graph, ValueCodec<T> values, Path dir, int groupSize, long checkpointInterval) {
+            this.graph = graph;
+            this.values = values;
+            this.dir = dir;
+            this.groupSize = Math.max(groupSize, 1);
+            this.checkpointInterval = Math.max(checkpointInterval, 1);
+        }
+
+        /**
+         * Opens the graph in the directory, recovering it from the last checkpoint and the log if they exist.
+         * @param dir The directory of the files, created if it does not exist.
+         * @param values The codec of the values of the vertices.
+         * @param weights The codec of the weights of the edges.
+         * @param groupSize The number of the records written with one fsync.
+         * @param checkpointInterval The number of the records after which the checkpoint is taken.
+         * @return The recovered graph.
+         */
+        static <T, E> DurableGraph<T, E> open(Path dir, ValueCodec<T> values, WeightCodec<E> weights,
+                                              int groupSize, long checkpointInterval) throws IOException {
+            Files.createDirectories(dir);
+            long generation = -1;
+            try(DirectoryStream<Path> files = Files.newDirectoryStream(dir, "checkpoint-*.bin")){
+                for(Path file : files){
+                    String name = file.getFileName().toString();
+                    generation = Math.max(generation, Long.parseLong(name.substring(11, name.length() - 4)));
+                }
+            }
+            SparseGraph<T, E> graph;
+            if(generation < 0){
+                generation = 0;
+                graph = new SparseGraph<>(weights);
+            } else {
+                graph = thaw(GraphSnapshot.load(dir.resolve("checkpoint-" + generation + ".bin"), values, weights, true));
+            }
+            DurableGraph<T, E> durable = new DurableGraph<>(graph, values, dir, groupSize, checkpointInterval);
+            durable.generation = generation;
+            durable.log = FileChannel.open(durable.logPath(generation), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            durable.syncDirectory();
+            durable.replay();
+            durable.deleteOlder(generation);
+            return durable;
+        }
+
+        /**
+         * Copies the frozen graph back to the mutable one.
+         */
+        private static <T, E> SparseGraph<T, E> thaw(CsrGraph<T, E> frozen){
+            int n = frozen.size();
+            SparseGraph<T, E> graph = new SparseGraph<>(frozen.codec, n);
+            for(Vertex<T> v : frozen.val){
+                graph.addVertex(v.value);
+            }
+            for(int i = 0; i < n; i++){
+                for(int k = frozen.outOffsets.get(i); k < frozen.outOffsets.get(i + 1); k++){
+                    graph.addEdge(i, frozen.targets.get(k), frozen.targetWeights.get(k));
+                }
+            }
+            return graph;
+        }
+
+        /**
+         * Applies all the complete records of the log to the graph and cuts the torn end of the log.
+         */
+        private void replay() throws IOException {
+            long size = log.size();
+            if(size > Integer.MAX_VALUE) throw new IOException("The log is too large to replay!");
+            ByteBuffer buf = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            while(buf.hasRemaining() && log.read(buf, buf.position()) > 0);
+            buf.flip();
+            byte[] bytes = buf.array();
+            int end = 0; //The end of the last complete record
+            while(buf.remaining() >= 4){
+                int length = buf.getInt();
+                if(length <= 0 || buf.remaining() < length + 4) break;
+                crc.reset();
+                crc.update(bytes, end + 4, length);
+                if((int) crc.getValue() != buf.getInt(end + 4 + length)) break;
+                apply(buf);
+                end += length + 8;
+                buf.position(end);
+                sinceCheckpoint++;
+            }
+            log.truncate(end);
+            synced = end;
+        }
+
+        /**
+         * Applies one record to the graph.
+         * @param buf The buffer positioned at the operation of the record.
+         */
+        private void apply(ByteBuffer buf) throws IOException {
+            byte op = buf.get();
+            switch(op){
+                case ADD_VERTEX:
+                    graph.addVertex(getValue(buf));
+                    break;
+                case REMOVE_VERTEX: {
+                    Integer v = graph.id.get(getValue(buf));
+                    if(v != null) removeVertex(graph, graph.val.get(v));
+                    break;
+                }
+                case ADD_EDGE: {
+                    Integer from = graph.id.get(getValue(buf)), to = graph.id.get(getValue(buf));
+                    long bits = buf.getLong();
+                    if(from != null && to != null) graph.addEdge(from, to, bits);
+                    break;
+                }
+                case REMOVE_EDGE: {
+                    Integer from = graph.id.get(getValue(buf)), to = graph.id.get(getValue(buf));
+                    if(from != null && to != null) graph.removeEdge(from, to);
+                    break;
+                }
+                case TRANSPOSE:
+                    graph.transpose();
+                    break;
+                default:
+                    throw new IOException("Unknown log record " + op + "!");
+            }
+        }
+
+        private static <T> void removeVertex(SparseGraph<T, ?> graph, Vertex<T> v) throws IOException {
+            try {
+                graph.removeVertex(v);
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+
+        private T getValue(ByteBuffer buf){
+            byte[] bytes = new byte[buf.getInt()];
+            buf.get(bytes);
+            return values.decode(bytes);
+        }
+
+        private Path logPath(long generation){
+            return dir.resolve("wal-" + generation + ".log");
+        }
+
+        private Path checkpointPath(long generation){
+            return dir.resolve("checkpoint-" + generation + ".bin");
+        }
+
+        /**
+         * Deletes the checkpoints and the logs of the generations before the given one.
+         */
+        private void deleteOlder(long generation) throws IOException {
+            try(DirectoryStream<Path> files = Files.newDirectoryStream(dir, "{checkpoint-*.bin,wal-*.log}")){
+                for(Path file : files){
+                    String name = file.getFileName().toString();
+                    int from = name.indexOf('-') + 1, to = name.lastIndexOf('.');
+                    if(Long.parseLong(name.substring(from, to)) < generation) Files.delete(file);
+                }
+            }
+        }
+
+        /**
+         * Starts the record in pending.
+         * @return The position of the record.
+         */
+        private int begin(byte op, int payload){
+            if(pending.remaining() < payload + 9){
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + payload + 9))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                pending.flip();
+                bigger.put(pending);
+                pending = bigger;
+            }
+            int start = pending.position();
+            pending.putInt(0).put(op);
+            return start;
+        }
+
+        /**
+         * Finishes the record in pending by writing its length and checksum, and writes the group if it is full.
+         * If the writing fails, the record is dropped, so the change must be made in memory only after this returns.
+         */
+        private void end(int start) throws IOException {
+            int length = pending.position() - start - 4;
+            pending.putInt(start, length);
+            crc.reset();
+            crc.update(pending.array(), start + 4, length);
+            pending.putInt((int) crc.getValue());
+            pendingRecords++;
+            if(pendingRecords < groupSize) return;
+            try {
+                sync();
+            } catch (IOException e) {
+                pending.position(start);
+                pendingRecords--;
+                throw e;
+            }
+        }
+
+        /**
+         * Counts the change made in memory and takes the checkpoint if it is time.
+         */
+        private void applied() throws IOException {
+            if(++sinceCheckpoint >= checkpointInterval) checkpoint();
+        }
+
+        private void putValue(byte[] bytes){
+            pending.putInt(bytes.length).put(bytes);
+        }
+
+        /**
+         * Writes all the pending records to the log and waits until they are on the disk.
+         * If it fails, the log is cut back to the synced size and the records stay pending.
+         */
+        void sync() throws IOException {
+            if(pendingRecords == 0) return;
+            ByteBuffer group = (ByteBuffer) pending.duplicate().flip();
+            try {
+                if(log.size() > synced) log.truncate(synced); //The rest of the failed sync
+                for(long at = synced; group.hasRemaining(); ){
+                    at += log.write(group, at);
+                }
+                log.force(false);
+            } catch (IOException e) {
+                try {
+                    log.truncate(synced);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+            synced += pending.position();
+            pending.clear();
+            pendingRecords = 0;
+        }
+
+        /**
+         * Waits until the names of the files in the directory are on the disk.
+         */
+        private void syncDirectory() throws IOException {
+            try(FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)){
+                channel.force(true);
+            }
+        }
+
+        /**
+         * Saves the whole graph as the checkpoint of the next generation and starts the new empty log.
+         * The files of the older generations are deleted.
+         */
+        void checkpoint() throws IOException {
+            sync();
+            long next = generation + 1;
+            Path tmp = dir.resolve("checkpoint.tmp");
+            GraphSnapshot.save(graph.freeze(), values, tmp);
+            FileChannel nextLog = FileChannel.open(logPath(next), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                Files.move(tmp, checkpointPath(next), StandardCopyOption.ATOMIC_MOVE);
+                syncDirectory();
+            } catch (IOException e) {
+                nextLog.close();
+                throw e;
+            }
+            log.close();
+            log = nextLog;
+            synced = 0;
+            generation = next;
+            sinceCheckpoint = 0;
+            deleteOlder(next);
+        }
+
+        /**
+         * Writes the pending records and closes the log.
+         */
+        @Override
+        public void close() throws IOException {
+            sync();
+            log.close();
+        }
+
+        @Override
+        public Vertex<T> addVertex(T value) {
+            byte[] bytes = values.encode(value);
+            int start = begin(ADD_VERTEX, bytes.length + 4);
+            putValue(bytes);
+            try {
+                end(start);
+                Vertex<T> v = graph.addVertex(value);
+                applied();
+                return v;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void removeVertex(Vertex<T> v) throws Exception {
+            if(v == null) throw new Exception("Vertix is null!");
+            if(!graph.contains(v)) throw new Exception("The vertex is not in the graph!");
+            byte[] bytes = values.encode(v.value);
+            int start = begin(REMOVE_VERTEX, bytes.length + 4);
+            putValue(bytes);
+            end(start);
+            graph.removeVertex(v);
+            applied();
+        }
+
+        /**
+         * Adds the edge, or removes it if the weight is null, the same as SparseGraph does.
+         */
+        @Override
+        public Edge<E, T> addEdge(Vertex<T> from, Vertex<T> to, E weight) throws Exception {
+            if(from == null || to == null) throw new Exception("The vertex is null!");
+            if(!graph.contains(from) || !graph.contains(to)) throw new Exception("The vertex is not in the graph!");
+            byte[] fromBytes = values.encode(from.value), toBytes = values.encode(to.value);
+            int start = begin(weight == null ? REMOVE_EDGE : ADD_EDGE, fromBytes.length + toBytes.length + 16);
+            putValue(fromBytes);
+            putValue(toBytes);
+            if(weight != null) pending.putLong(graph.codec.encode(weight));
+            end(start);
+            Edge<E, T> e = graph.addEdge(from, to, weight);
+            applied();
+            return e;
+        }
+
+        @Override
+        public void removeEdge(Edge<E, T> e) throws Exception {
+            if(e == null) throw new Exception("The edge is null!");
+            if(!graph.contains(e.from) || !graph.contains(e.to)) throw new Exception("The vertex is not in the graph!");
+            byte[] fromBytes = values.encode(e.from.value), toBytes = values.encode(e.to.value);
+            int start = begin(REMOVE_EDGE, fromBytes.length + toBytes.length + 8);
+            putValue(fromBytes);
+            putValue(toBytes);
+            end(start);
+            graph.removeEdge(e);
+            applied();
+        }
+
+        /**
+         * Transposes the graph.
+         */
+        void transpose() throws IOException {
+            end(begin(TRANSPOSE, 0));
+            graph.transpose();
+            applied();
+        }
+
+        @Override
+        public ArrayList<Edge<E, T>> edgesFrom(Vertex<T> v) throws Exception {
+            return graph.edgesFrom(v);
+        }
+
+        @Override
+        public ArrayList<Edge<E, T>> edgesTo(Vertex<T> v) throws Exception {
+            return graph.edgesTo(v);
+        }
+
+        @Override
+        public Vertex<T> findVertex(T value) {
+            return graph.findVertex(value);
+        }
+
+        @Override
+        public Edge<E, T> findEdge(T from_value, T to_value) {
+            return graph.findEdge(from_value, to_value);
+        }
+
+        @Override
+        public boolean hasEdge(Vertex<T> v, Vertex<T> u) throws Exception {
+            return graph.hasEdge(v, u);
+        }
+
+        @Override
+        public void forEachOut(int vertexId, EdgeVisitor visitor) {
+            graph.forEachOut(vertexId, visitor);
+        }
+
+        @Override
+        public void forEachIn(int vertexId, EdgeVisitor visitor) {
+            graph.forEachIn(vertexId, visitor);
+        }
+    }
+
+    /**
+     * The implementation of the graph interface which can be used by many threads at once.
+     *
+     * Every vertex keeps its outgoing and incoming edges in the immutable rows sorted by the serial numbers of the other
+     * vertices, and the change of the edge replaces the rows (copy on write). The writers take the write lock of the
+     * StampedLock, so the changes are made one by one. The readers do not lock at all: they read the rows and then check
+     * that no writer has started in the meantime, and only if one has, they read again under the read lock.
+     * So every operation takes effect at one moment between its call and its return, and the readers do not write
+     * to the shared memory and do not wait for each other.
+     *
+     * The id of the vertex is its serial number, which does not change when the other vertices are removed. The numbers of
+     * the removed vertices are given to the next added ones, so bySerial is not longer than the most vertices held at once.
+     * The algorithms which need the indices work on the frozen copy made by snapshot.
+     * @param <T> The type of the value of the vertex.
+     * @param <E> The type of the weight of the edge.
+     */
+    static class ConcurrentGraph<T, E> implements Graph<T, E> {
+
+        /**
+         * The immutable list of the edges of the vertex, sorted by the serial numbers of the other vertices.
+         */
+        static final class Row {
+            static final Row EMPTY = new Row(new int[0], new Node<?>[0], new long[0]);
+
+            final int[] keys; //The serial numbers of the other vertices
+            final Node<?>[] others; //The other vertices
+            final long[] weights; //The weights of the edges
+
+            Row(int[] keys, Node<?>[] others, long[] weights) {
+                this.keys = keys;
+                this.others = others;
+                this.weights = weights;
+            }
+
+            int find(int key){
+                return Arrays.binarySearch(keys, key);
+            }
+
+            /**
+             * @return The copy of the row with the edge to the vertex added or its weight replaced.
+             */
+            Row with(Node<?> other, long bits){
+                int k = find(other.vertex.id);
+                if(k >= 0){
+                    long[] w = weights.clone();
+                    w[k] = bits;
+                    return new Row(keys, others, w);
+                }
+                k = -k - 1;
+                int n = keys.length;
+                int[] newKeys = new int[n + 1];
+                Node<?>[] newOthers = new Node<?>[n + 1];
+                long[] newWeights = new long[n + 1];
+                System.arraycopy(keys, 0, newKeys, 0, k);
+                System.arraycopy(others, 0, newOthers, 0, k);
+                System.arraycopy(weights, 0, newWeights, 0, k);
+                newKeys[k] = other.vertex.id;
+                newOthers[k] = other;
+                newWeights[k] = bits;
+                System.arraycopy(keys, k, newKeys, k + 1, n - k);
+                System.arraycopy(others, k, newOthers, k + 1, n - k);
+                System.arraycopy(weights, k, newWeights, k + 1, n - k);
+                return new Row(newKeys, newOthers, newWeights);
+            }
+
+            /**
+             * @return The copy of the row without the edge to the vertex, or this row if there is no such edge.
+             */
+            Row without(Node<?> other){
+                int k = find(other.vertex.id);
+                if(k < 0) return this;
+                int n = keys.length;
+                if(n == 1) return EMPTY;
+                int[] newKeys = new int[n - 1];
+                Node<?>[] newOthers = new Node<?>[n - 1];
+                long[] newWeights = new long[n - 1];
+                System.arraycopy(keys, 0, newKeys, 0, k);
+                System.arraycopy(others, 0, newOthers, 0, k);
+                System.arraycopy(weights, 0, newWeights, 0, k);
+                System.arraycopy(keys, k + 1, newKeys, k, n - k - 1);
+                System.arraycopy(others, k + 1, newOthers, k, n - k - 1);
+                System.arraycopy(weights, k + 1, newWeights, k, n - k - 1);
+                return new Row(newKeys, newOthers, newWeights);
+            }
+        }
+
+        /**
+         * The vertex with its rows.
+         */
+        static final class Node<T> {
+            final Vertex<T> vertex;
+            volatile Row out = Row.EMPTY, in = Row.EMPTY;
+
+            Node(Vertex<T> vertex) {
+                this.vertex = vertex;
+            }
+        }
+
+        final WeightCodec<E> codec; //Converts the weights to the primitive bits and back
+        final ConcurrentHashMap<T, Node<T>> nodes = new ConcurrentHashMap<>(); //The vertices by their values
+        Node<?>[] bySerial = new Node<?>[16]; //The vertices by their serial numbers, null for the removed ones
+        final StampedLock lock = new StampedLock(); //Orders the writers and checks the readers
+        int serial; //The serial number of the next new vertex, changed under the write lock
+        int[] freeSerials = new int[16]; //The stack of the numbers of the removed vertices, changed under the write lock
+        int freeCount; //The number of the free serial numbers
+
+        /**
+         * @param codec The codec of the weights.
+         */
+        ConcurrentGraph(WeightCodec<E> codec) {
+            this.codec = codec;
+        }
+
+        /**
+         * @return The number of the vertices in the graph.
+         */
+        int size(){
+            return nodes.size();
+        }
+
+        /**
+         * The vertex must be the same object as the vertex of the node, so the handle of the removed vertex is not taken
+         * for the new vertex with the same value, even if it got the same number.
+         * @return The node of the given vertex, or null if the vertex has been removed.
+         */
+        private Node<T> node(Vertex<T> v){
+            Node<T> node = nodes.get(v.value);
+            return node != null && node.vertex == v ? node : null;
+        }
+
+        /**
+         * Adds the vertex. If the vertex with such value already exists, it is returned.
+         * @param value The value of the vertex
+         * @return The vertex with the given value.
+         */
+        @Override
+        public Vertex<T> addVertex(T value) {
+            long stamp = lock.writeLock();
+            try {
+                Node<T> node = nodes.get(value);
+                if(node == null){
+                    int number;
+                    if(freeCount > 0){
+                        number = freeSerials[--freeCount];
+                    } else {
+                        if(serial == bySerial.length) bySerial = Arrays.copyOf(bySerial, serial * 2);
+                        number = serial++;
+                    }
+                    node = new Node<>(new Vertex<>(value, number));
+                    bySerial[number] = node;
+                    nodes.put(value, node);
+                }
+                return node.vertex;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Removes the given vertex and all its edges.
+         * @param v The given vertex.
+         */
+        @Override
+        public void removeVertex(Vertex<T> v) throws Exception {
+            if(v == null) throw new Exception("Vertix is null!");
+            long stamp = lock.writeLock();
+            try {
+                Node<T> node = node(v);
+                if(node == null) throw new Exception("The vertex is not in the graph!");
+                Row out = node.out, in = node.in;
+                for(int k = 0; k < out.others.length; k++){
+                    Node<?> to = out.others[k];
+                    to.in = to.in.without(node);
+                }
+                for(int k = 0; k < in.others.length; k++){
+                    Node<?> from = in.others[k];
+                    from.out = from.out.without(node);
+                }
+                node.out = Row.EMPTY;
+                node.in = Row.EMPTY;
+                nodes.remove(v.value);
+                bySerial[v.id] = null;
+                if(freeCount == freeSerials.length) freeSerials = Arrays.copyOf(freeSerials, freeCount * 2);
+                freeSerials[freeCount++] = v.id;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Adds a new edge to the graph, or replaces the weight of the existing one.
+         * The null weight removes the edge.
+         * @param from The vertex from which the edge begins
+         * @param to The vertex at which the edge ends.
+         * @param weight The weight of the edge.
+         * @return The created edge.
+         */
+        @Override
+        public Edge<E, T> addEdge(Vertex<T> from, Vertex<T> to, E weight) throws Exception {
+            if(from == null || to == null) throw new Exception("The vertex is null!");
+            long stamp = lock.writeLock();
+            try {
+                Node<T> fromNode = node(from), toNode = node(to);
+                if(fromNode == null || toNode == null) throw new Exception("The vertex is not in the graph!");
+                if(weight == null){
+                    fromNode.out = fromNode.out.without(toNode);
+                    toNode.in = toNode.in.without(fromNode);
+                } else {
+                    long bits = codec.encode(weight);
+                    fromNode.out = fromNode.out.with(toNode, bits);
+                    toNode.in = toNode.in.with(fromNode, bits);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            return new Edge<>(from, to, weight);
+        }
+
+        /**
+         * Removes the specified edge if it exists.
+         * @param e The specified edge.
+         */
+        @Override
+        public void removeEdge(Edge<E, T> e) throws Exception {
+            if(e == null) throw new Exception("The edge is null!");
+            addEdge(e.from, e.to, null);
+        }
+
+        /**
+         * Transposes the graph by swapping the rows of every vertex.
+         */
+        void transpose(){
+            long stamp = lock.writeLock();
+            try {
+                for(Node<T> node : nodes.values()){
+                    Row out = node.out;
+                    node.out = node.in;
+                    node.in = out;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Gets all the edges from the specified vertex.
+         * @param v The specified vertex v
+         * @return ArrayList of the requested edges.
+         */
+        @Override
+        public ArrayList<Edge<E, T>> edgesFrom(Vertex<T> v) throws Exception {
+            if(v == null) throw new Exception("The vertex is null!");
+            long stamp = lock.tryOptimisticRead();
+            Row row = row(v, true);
+            if(!lock.validate(stamp)){
+                stamp = lock.readLock();
+                try {
+                    row = row(v, true);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return edges(v, row, true);
+        }
+
+        /**
+         * Gets all the edges to the specified vertex.
+         * @param v The specified vertex v
+         * @return ArrayList of the requested edges.
+         */
+        @Override
+        public ArrayList<Edge<E, T>> edgesTo(Vertex<T> v) throws Exception {
+            if(v == null) throw new Exception("The vertex is null!");
+            long stamp = lock.tryOptimisticRead();
+            Row row = row(v, false);
+            if(!lock.validate(stamp)){
+                stamp = lock.readLock();
+                try {
+                    row = row(v, false);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return edges(v, row, false);
+        }
+
+        /**
+         * Visits the edges from the vertex with the given serial number, the ids given to the visitor are the serial numbers too.
+         */
+        @Override
+        public void forEachOut(int vertexId, EdgeVisitor visitor) {
+            visit(row(vertexId, true), visitor);
+        }
+
+        /**
+         * Visits the edges to the vertex with the given serial number, the ids given to the visitor are the serial numbers too.
+         */
+        @Override
+        public void forEachIn(int vertexId, EdgeVisitor visitor) {
+            visit(row(vertexId, false), visitor);
+        }
+
+        /**
+         * @return The row of the vertex with the given serial number, read the same way as in edgesFrom.
+         */
+        private Row row(int serial, boolean out){
+            long stamp = lock.tryOptimisticRead();
+            Row row = rowBySerial(serial, out);
+            if(!lock.validate(stamp)){
+                stamp = lock.readLock();
+                try {
+                    row = rowBySerial(serial, out);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return row;
+        }
+
+        private Row rowBySerial(int serial, boolean out){
+            Node<?>[] all = bySerial;
+            Node<?> node = serial < all.length ? all[serial] : null;
+            if(node == null) return Row.EMPTY;
+            return out ? node.out : node.in;
+        }
+
+        private void visit(Row row, EdgeVisitor visitor){
+            for(int k = 0; k < row.keys.length; k++){
+                long bits = row.weights[k];
+                visitor.visit(row.keys[k], codec.toLong(bits), codec.bandwidth(bits));
+            }
+        }
+
+        /**
+         * @return The row of the vertex, or the empty row if the vertex has been removed.
+         */
+        private Row row(Vertex<T> v, boolean out){
+            Node<T> node = node(v);
+            if(node == null) return Row.EMPTY;
+            return out ? node.out : node.in;
+        }
+
+        /**
+         * Creates the edges of the row, which is immutable, so it is done outside of the check.
+         */
+        @SuppressWarnings("unchecked")
+        private ArrayList<Edge<E, T>> edges(Vertex<T> v, Row row, boolean out){
+            ArrayList<Edge<E, T>> result = new ArrayList<>(row.keys.length);
+            for(int k = 0; k < row.keys.length; k++){
+                Vertex<T> other = ((Node<T>) row.others[k]).vertex;
+                E weight = codec.decode(row.weights[k]);
+                result.add(out ? new Edge<>(v, other, weight) : new Edge<>(other, v, weight));
+            }
+            return result;
+        }
+
+        /**
+         * Finds the vertex of the specified value.
+         * @param value The specified value of the vertex
+         * @return The found vertex or null.
+         */
+        @Override
+        public Vertex<T> findVertex(T value) {
+            Node<T> node = nodes.get(value);
+            return node == null ? null : node.vertex;
+        }
+
+        /**
+         * Finds the edge between the vertices with the given values.
+         * @return The found edge or null.
+         */
+        @Override
+        public Edge<E, T> findEdge(T from_value, T to_value) {
+            long stamp = lock.tryOptimisticRead();
+            Edge<E, T> e = edge(from_value, to_value);
+            if(!lock.validate(stamp)){
+                stamp = lock.readLock();
+                try {
+                    e = edge(from_value, to_value);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return e;
+        }
+
+        private Edge<E, T> edge(T from_value, T to_value){
+            Node<T> from = nodes.get(from_value), to = nodes.get(to_value);
+            if(from == null || to == null) return null;
+            Row row = from.out;
+            int k = row.find(to.vertex.id);
+            return k < 0 ? null : new Edge<>(from.vertex, to.vertex, codec.decode(row.weights[k]));
+        }
+
+        /**
+         * Checks if there is the edge from v to u.
+         * @return true if the edge exists.
+         */
+        @Override
+        public boolean hasEdge(Vertex<T> v, Vertex<T> u) throws Exception {
+            if(v == null || u == null) throw new Exception("Some vertices are null");
+            long stamp = lock.tryOptimisticRead();
+            boolean found = row(v, true).find(u.id) >= 0;
+            if(!lock.validate(stamp)){
+                stamp = lock.readLock();
+                try {
+                    found = row(v, true).find(u.id) >= 0;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return found;
+        }
+
+        /**
+         * Creates the frozen copy of the graph at one moment, for the algorithms which need the indices of the vertices.
+         * @return The frozen graph, where the vertices have the indices from 0 and their own Vertex objects.
+         */
+        CsrGraph<T, E> snapshot(){
+            long stamp = lock.readLock();
+            try {
+                SparseGraph<T, E> graph = new SparseGraph<>(codec, nodes.size());
+                for(Node<T> node : nodes.values()){
+                    graph.addVertex(node.vertex.value);
+                }
+                for(Node<T> node : nodes.values()){
+                    int from = graph.id.get(node.vertex.value);
+                    Row row = node.out;
+                    for(int k = 0; k < row.keys.length; k++){
+                        graph.addEdge(from, graph.id.get(row.others[k].vertex.value), row.weights[k]);
+                    }
+                }
+                return graph.freeze();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * The array which is copied in constant time. The elements are kept in the chunks of 64, and after copy the chunks are
+     * shared by both arrays until one of them changes the chunk, then only this chunk is copied.
+     * Every array knows which chunks it owns by the epoch: the chunk is owned if it was copied in the current epoch,
+     * and copy starts the new epoch, so none of the old chunks are owned any more.
+     * The chunks which no array uses are collected by the garbage collector.
+     * @param <V> The type of the elements.
+     */
+    static final class PersistentArray<V> {
+        static final int SHIFT = 6, CHUNK = 1 << SHIFT, MASK = CHUNK - 1;
+
+        Object[][] chunks; //The chunks of the elements, the missing chunk is the chunk of nulls
+        int[] chunkEpoch; //The epoch in which the chunk was copied by this array
+        int epoch = 1; //The current epoch
+        int rootEpoch; //The epoch in which the array of the chunks was copied by this array
+
+        /**
+         * Creates the array of nulls.
+         * @param length The number of the elements.
+         */
+        PersistentArray(int length) {
+            chunks = new Object[(length + MASK) >>> SHIFT][];
+            chunkEpoch = new int[chunks.length];
+            rootEpoch = epoch;
+        }
+
+        private PersistentArray(Object[][] chunks) {
+            this.chunks = chunks;
+            chunkEpoch = new int[chunks.length];
+        }
+
+        /**
+         * @return The number of the elements.
+         */
+        int length(){
+            return chunks.length << SHIFT;
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(int i){
+            Object[] chunk = chunks[i >>> SHIFT];
+            return chunk == null ? null : (V) chunk[i & MASK];
+        }
+
+        void set(int i, V value){
+            int c = i >>> SHIFT;
+            if(rootEpoch != epoch){
+                chunks = chunks.clone();
+                chunkEpoch = chunkEpoch.clone();
+                rootEpoch = epoch;
+            }
+            if(chunkEpoch[c] != epoch){
+                chunks[c] = chunks[c] == null ? new Object[CHUNK] : chunks[c].clone();
+                chunkEpoch[c] = epoch;
+            }
+            chunks[c][i & MASK] = value;
+        }
+
+        /**
+         * Makes the array hold at least the given number of the elements.
+         */
+        void ensureLength(int length){
+            if(length <= length()) return;
+            int count = Math.max((length + MASK) >>> SHIFT, chunks.length * 2);
+            chunks = Arrays.copyOf(chunks, count);
+            chunkEpoch = Arrays.copyOf(chunkEpoch, count);
+            rootEpoch = epoch;
+        }
+
+        /**
+         * @return The copy of the array, which shares all the chunks with it.
+         */
+        PersistentArray<V> copy(){
+            epoch++;
+            return new PersistentArray<>(chunks);
+        }
+    }
+
+    /**
+     * The graph whose versions can be taken in constant time while it keeps changing.
+     *
+     * Every vertex is the immutable row with its outgoing and incoming edges sorted by the index of the other vertex, and the
+     * change of the edge replaces the rows of its two vertices (copy on write). The rows and the hash table which finds
+     * the vertex by its value are kept in the PersistentArrays, so snapshot only copies the references to them, and the
+     * snapshot and the live graph share everything that has not changed since. The versions which are not referenced any
+     * more are collected by the garbage collector.
+     *
+     * The snapshot is read only and does not change, so it may be used by the other thread, after it was handed over through
+     * the executor, the concurrent queue or any other safe publication, while this thread changes the live graph.
+     * The indices of the vertices do not change when the other vertices are removed, the removed indices are reused.
+     * Transpose only flips the flag, like in FlatMatrixGraph.
+     * @param <T> The type of the value of the vertex.
+     * @param <E> The type of the weight of the edge.
+     */
+    static class VersionedGraph<T, E> implements Graph<T, E>, IndexedAdjacency{
+
+        /**
+         * The vertex with its edges. The edges are stored as they were added, transposed only changes how they are read.
+         */
+        static final class Row<T> {
+            final Vertex<T> vertex;
+            final int[] targets, sources; //The indices of the other vertices, sorted
+            final long[] targetWeights, sourceWeights; //The encoded weights of the edges
+
+            Row(Vertex<T> vertex, int[] targets, long[] targetWeights, int[] sources, long[] sourceWeights) {
+                this.vertex = vertex;
+                this.targets = targets;
+                this.targetWeights = targetWeights;
+                this.sources = sources;
+                this.sourceWeights = sourceWeights;
+            }
+
+            Row<T> withTarget(int to, long bits){
+                int k = Arrays.binarySearch(targets, to);
+                if(k >= 0){
+                    long[] weights = targetWeights.clone();
+                    weights[k] = bits;
+                    return new Row<>(vertex, targets, weights, sources, sourceWeights);
+                }
+                k = -k - 1;
+                return new Row<>(vertex, insert(targets, k, to), insert(targetWeights, k, bits), sources, sourceWeights);
+            }
+
+            Row<T> withSource(int from, long bits){
+                int k = Arrays.binarySearch(sources, from);
+                if(k >= 0){
+                    long[] weights = sourceWeights.clone();
+                    weights[k] = bits;
+                    return new Row<>(vertex, targets, targetWeights, sources, weights);
+                }
+                k = -k - 1;
+                return new Row<>(vertex, targets, targetWeights, insert(sources, k, from), insert(sourceWeights, k, bits));
+            }
+
+            Row<T> withoutTarget(int to){
+                int k = Arrays.binarySearch(targets, to);
+                if(k < 0) return this;
+                return new Row<>(vertex, delete(targets, k), delete(targetWeights, k), sources, sourceWeights);
+            }
+
+            Row<T> withoutSource(int from){
+                int k = Arrays.binarySearch(sources, from);
+                if(k < 0) return this;
+                return new Row<>(vertex, targets, targetWeights, delete(sources, k), delete(sourceWeights, k));
+            }
+
+            private static int[] insert(int[] a, int k, int x){
+                int[] b = new int[a.length + 1];
+                System.arraycopy(a, 0, b, 0, k);
+                b[k] = x;
+                System.arraycopy(a, k, b, k + 1, a.length - k);
+                return b;
+            }
+
+            private static long[] insert(long[] a, int k, long x){
+                long[] b = new long[a.length + 1];
+                System.arraycopy(a, 0, b, 0, k);
+                b[k] = x;
+                System.arraycopy(a, k, b, k + 1, a.length - k);
+                return b;
+            }
+
+            private static int[] delete(int[] a, int k){
+                int[] b = new int[a.length - 1];
+                System.arraycopy(a, 0, b, 0, k);
+                System.arraycopy(a, k + 1, b, k, a.length - k - 1);
+                return b;
+            }
+
+            private static long[] delete(long[] a, int k){
+                long[] b = new long[a.length - 1];
+                System.arraycopy(a, 0, b, 0, k);
+                System.arraycopy(a, k + 1, b, k, a.length - k - 1);
+                return b;
+            }
+        }
+
+        static final Vertex<Object> REMOVED = new Vertex<>(null, -1); //Marks the removed entry of the hash table
+
+        final WeightCodec<E> codec; //Converts the weights to the primitive bits and back
+        final boolean frozen; //true for the snapshots
+        PersistentArray<Row<T>> rows; //The rows of the vertices by their indices, null for the free indices
+        PersistentArray<Vertex<T>> table; //The hash table with linear probing from the values to the vertices
+        int tableUsed; //The number of the entries of the table, including the removed ones
+        int slots; //The bound of the indices of the vertices
+        int size; //The number of the vertices
+        int edgeCount; //The number of the edges
+        boolean transposed; //If true, the edges are read in the opposite direction
+        int[] free = new int[16]; //The stack of the free indices, only in the live graph
+        int freeCount; //The number of the free indices
+
+        /**
+         * @param codec The codec of the weights.
+         */
+        VersionedGraph(WeightCodec<E> codec) {
+            this.codec = codec;
+            frozen = false;
+            rows = new PersistentArray<>(16);
+            table = new PersistentArray<>(32);
+        }
+
+        /**
+         * Creates the snapshot of the graph.
+         */
+        private VersionedGraph(VersionedGraph<T, E> graph) {
+            codec = graph.codec;
+            frozen = true;
+            rows = graph.rows.copy();
+            table = graph.table.copy();
+            tableUsed = graph.tableUsed;
+            slots = graph.slots;
+            size = graph.size;
+            edgeCount = graph.edgeCount;
+            transposed = graph.transposed;
+            free = null;
+        }
+
+        /**
+         * Takes the immutable version of the graph in constant time.
+         * @return The read only graph, which does not see the later changes.
+         */
+        VersionedGraph<T, E> snapshot(){
+            return new VersionedGraph<>(this);
+        }
+
+        /**
+         * @return The number of the vertices in the graph.
+         */
+        int size(){
+            return size;
+        }
+
+        private void checkWritable() throws Exception {
+            if(frozen) throw new Exception("The graph is frozen!");
+        }
+
+        /**
+         * @return The row of the vertex, or null if the vertex is not in this version of the graph.
+         */
+        private Row<T> row(Vertex<T> v){
+            if(v.id < 0 || v.id >= slots) return null;
+            Row<T> row = rows.get(v.id);
+            return row != null && row.vertex == v ? row : null;
+        }
+
+        private static int hash(Object value, int mask){
+            int h = value.hashCode();
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        /**
+         * @return The position of the value in the hash table, or -1.
+         */
+        private int findEntry(Object value){
+            int mask = table.length() - 1;
+            for(int i = hash(value, mask); ; i = (i + 1) & mask){
+                Vertex<T> v = table.get(i);
+                if(v == null) return -1;
+                if(v != REMOVED && v.value.equals(value)) return i;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void putEntry(Vertex<T> vertex){
+            if((tableUsed + 1) * 2 > table.length()){
+                int length = table.length();
+                if((size + 1) * 4 > length) length *= 2;
+                PersistentArray<Vertex<T>> old = table;
+                table = new PersistentArray<>(length);
+                tableUsed = 0;
+                for(int i = 0; i < old.length(); i++){
+                    Vertex<T> v = old.get(i);
+                    if(v != null && v != REMOVED) putEntry(v);
+                }
+            }
+            int mask = table.length() - 1;
+            int i = hash(vertex.value, mask);
+            while(table.get(i) != null && table.get(i) != REMOVED) i = (i + 1) & mask;
+            if(table.get(i) == null) tableUsed++;
+            table.set(i, vertex);
+        }
+
+        /**
+         * Adds the vertex. If the vertex with such value already exists, it is returned.
+         * @param value The value of the vertex
+         * @return The vertex with the given value.
+         */
+        @Override
+        public Vertex<T> addVertex(T value) {
+            if(frozen) throw new UnsupportedOperationException("The graph is frozen!");
+            int entry = findEntry(value);
+            if(entry != -1) return table.get(entry);
+            int index;
+            if(freeCount > 0){
+                index = free[--freeCount];
+            } else {
+                index = slots++;
+                rows.ensureLength(slots);
+            }
+            Vertex<T> v = new Vertex<>(value, index);
+            rows.set(index, new Row<>(v, new int[0], new long[0], new int[0], new long[0]));
+            putEntry(v);
+            size++;
+            return v;
+        }
+
+        /**
+         * Removes the given vertex and all its edges. Its index will be given to the next added vertex.
+         * @param v The given vertex.
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public void removeVertex(Vertex<T> v) throws Exception {
+            checkWritable();
+            if(v == null) throw new Exception("Vertix is null!");
+            Row<T> row = row(v);
+            if(row == null) throw new Exception("The vertex is not in the graph!");
+            int index = v.id;
+            for(int to : row.targets){
+                if(to != index) rows.set(to, rows.get(to).withoutSource(index));
+            }
+            for(int from : row.sources){
+                if(from != index) rows.set(from, rows.get(from).withoutTarget(index));
+            }
+            edgeCount -= row.targets.length + row.sources.length;
+            if(Arrays.binarySearch(row.targets, index) >= 0) edgeCount++;
+            rows.set(index, null);
+            table.set(findEntry(v.value), (Vertex<T>) (Vertex<?>) REMOVED);
+            size--;
+            if(freeCount == free.length) free = Arrays.copyOf(free, freeCount * 2);
+            free[freeCount++] = index;
+        }
+
+        /**
+         * Adds a new edge to the graph, or replaces the weight of the existing one.
+         * The null weight removes the edge.
+         * @param from The vertex from which the edge begins
+         * @param to The vertex at which the edge ends.
+         * @param weight The weight of the edge.
+         * @return The created edge.
+         */
+        @Override
+        public Edge<E, T> addEdge(Vertex<T> from, Vertex<T> to, E weight) throws Exception {
+            checkWritable();
+            if(from == null || to == null) throw new Exception("The vertex is null!");
+            if(row(from) == null || row(to) == null) throw new Exception("The vertex is not in the graph!");
+            int a = transposed ? to.id : from.id, b = transposed ? from.id : to.id;
+            if(weight == null){
+                removeEdge(a, b);
+            } else {
+                long bits = codec.encode(weight);
+                Row<T> row = rows.get(a);
+                if(Arrays.binarySearch(row.targets, b) < 0) edgeCount++;
+                rows.set(a, row.withTarget(b, bits));
+                rows.set(b, rows.get(b).withSource(a, bits));
+            }
+            return new Edge<>(from, to, weight);
+        }
+
+        private void removeEdge(int a, int b){
+            Row<T> row = rows.get(a);
+            if(Arrays.binarySearch(row.targets, b) < 0) return;
+            edgeCount--;
+            rows.set(a, row.withoutTarget(b));
+            rows.set(b, rows.get(b).withoutSource(a));
+        }
+
+        /**
+         * Removes the specified edge if it exists.
+         * @param e The specified edge.
+         */
+        @Override
+        public void removeEdge(Edge<E, T> e) throws Exception {
+            if(e == null) throw new Exception("The edge is null!");
+            addEdge(e.from, e.to, null);
+        }
+
+        /**
+         * Transposes the graph by flipping the direction in which the edges are read.
+         */
+        void transpose() throws Exception {
+            checkWritable();
+            transposed = !transposed;
+        }
+
+        private int[] out(Row<T> row){
+            return transposed ? row.sources : row.targets;
+        }
+
+        private long[] outWeights(Row<T> row){
+            return transposed ? row.sourceWeights : row.targetWeights;
+        }
+
+        private int[] in(Row<T> row){
+            return transposed ? row.targets : row.sources;
+        }
+
+        private long[] inWeights(Row<T> row){
+            return transposed ? row.targetWeights : row.sourceWeights;
+        }
+
+        /**
+         * Gets all the edges from the specified vertex.
+         * @param v The specified vertex v
+         * @return ArrayList of the requested edges.
+         */
+        @Override
+        public ArrayList<Edge<E, T>> edgesFrom(Vertex<T> v) throws Exception {
+            if(v == null) throw new Exception("The vertex is null!");
+            ArrayList<Edge<E, T>> edges = new ArrayList<>();
+            Row<T> row = row(v);
+            if(row == null) return edges;
+            int[] targets = out(row);
+            long[] weights = outWeights(row);
+            for(int k = 0; k < targets.length; k++){
+                edges.add(new Edge<>(v, rows.get(targets[k]).vertex, codec.decode(weights[k])));
+            }
+            return edges;
+        }
+
+        /**
+         * Gets all the edges to the specified vertex.
+         * @param v The specified vertex v
+         * @return ArrayList of the requested edges.
+         */
+        @Override
+        public ArrayList<Edge<E, T>> edgesTo(Vertex<T> v) throws Exception {
+            if(v == null) throw new Exception("The vertex is null!");
+            ArrayList<Edge<E, T>> edges = new ArrayList<>();
+            Row<T> row = row(v);
+            if(row == null) return edges;
+            int[] sources = in(row);
+            long[] weights = inWeights(row);
+            for(int k = 0; k < sources.length; k++){
+                edges.add(new Edge<>(rows.get(sources[k]).vertex, v, codec.decode(weights[k])));
+            }
+            return edges;
+        }
+
+        /**
+         * Finds the vertex of the specified value.
+         * @param value The specified value of the vertex
+         * @return The found vertex or null.
+         */
+        @Override
+        public Vertex<T> findVertex(T value) {
+            int entry = findEntry(value);
+            return entry == -1 ? null : table.get(entry);
+        }
+
+        /**
+         * Finds the edge between the vertices with the given values.
+         * @return The found edge or null.
+         */
+        @Override
+        public Edge<E, T> findEdge(T from_value, T to_value) {
+            Vertex<T> from = findVertex(from_value), to = findVertex(to_value);
+            if(from == null || to == null) return null;
+            Row<T> row = rows.get(from.id);
+            int k = Arrays.binarySearch(out(row), to.id);
+            return k < 0 ? null : new Edge<>(from, to, codec.decode(outWeights(row)[k]));
+        }
+
+        /**
+         * Checks if there is the edge from v to u.
+         * @return true if the edge exists.
+         */
+        @Override
+        public boolean hasEdge(Vertex<T> v, Vertex<T> u) throws Exception {
+            if(v == null || u == null) throw new Exception("The vertex is null!");
+            Row<T> row = row(v);
+            return row != null && row(u) != null && Arrays.binarySearch(out(row), u.id) >= 0;
+        }
+
+        @Override
+        public int slots() {
+            return slots;
+        }
+
+        @Override
+        public boolean isLive(int v) {
+            return rows.get(v) != null;
+        }
+
+        @Override
+        public int nextEdge(int v, int pos) {
+            return pos + 1 < out(rows.get(v)).length ? pos + 1 : -1;
+        }
+
+        @Override
+        public int target(int v, int pos) {
+            return out(rows.get(v))[pos];
+        }
+
+        @Override
+        public long weightAsLong(int v, int pos) {
+            return codec.toLong(outWeights(rows.get(v))[pos]);
+        }
+
+        @Override
+        public void forEachOut(int vertexId, EdgeVisitor visitor) {
+            Row<T> row = rows.get(vertexId);
+            int[] targets = out(row);
+            long[] weights = outWeights(row);
+            for(int k = 0; k < targets.length; k++){
+                long bits = weights[k];
+                visitor.visit(targets[k], codec.toLong(bits), codec.bandwidth(bits));
+            }
+        }
+
+        @Override
+        public void forEachIn(int vertexId, EdgeVisitor visitor) {
+            Row<T> row = rows.get(vertexId);
+            int[] sources = in(row);
+            long[] weights = inWeights(row);
+            for(int k = 0; k < sources.length; k++){
+                long bits = weights[k];
+                visitor.visit(sources[k], codec.toLong(bits), codec.bandwidth(bits));
+            }
+        }
+
+        /**
+         * Creates the CsrGraph copy of this version, where the vertices get the indices from 0 in the order of their indices here.
+         * @return The frozen graph.
+         */
+        CsrGraph<T, E> freeze(){
+            int[] dense = new int[slots];
+            ArrayList<Vertex<T>> vertices = new ArrayList<>(size);
+            HashMap<T, Integer> ids = new HashMap<>(size * 2);
+            for(int i = 0; i < slots; i++){
+                Row<T> row = rows.get(i);
+                if(row == null) continue;
+                dense[i] = vertices.size();
+                ids.put(row.vertex.value, vertices.size());
+                vertices.add(new Vertex<>(row.vertex.value, vertices.size()));
+            }
+            int n = vertices.size();
+            int[] outOffsets = new int[n + 1], inOffsets = new int[n + 1];
+            int[] targets = new int[edgeCount], sources = new int[edgeCount];
+            long[] targetWeights = new long[edgeCount], sourceWeights = new long[edgeCount];
+            for(int i = 0; i < slots; i++){
+                Row<T> row = rows.get(i);
+                if(row == null) continue;
+                int d = dense[i];
+                outOffsets[d + 1] = copyRow(out(row), outWeights(row), dense, targets, targetWeights, outOffsets[d]);
+                inOffsets[d + 1] = copyRow(in(row), inWeights(row), dense, sources, sourceWeights, inOffsets[d]);
+            }
+            return new CsrGraph<>(codec, ids, vertices, outOffsets, targets, targetWeights, inOffsets, sources, sourceWeights);
+        }
+
+        /**
+         * Copies the sorted list with the new indices, which keeps it sorted.
+         * @return The end of the copied list.
+         */
+        private static int copyRow(int[] list, long[] weights, int[] dense, int[] to, long[] toWeights, int offset){
+            for(int k = 0; k < list.length; k++){
+                to[offset + k] = dense[list[k]];
+                toWeights[offset + k] = weights[k];
+            }
+            return offset + list.length;
+        }
+    }
+
+    /**
+     * The memory outside of the Java heap, given out by the addresses: the chunks of the direct buffers, or of the file mapped
+     * into the memory when the file is given. The blocks are the powers of two bytes, the freed blocks are kept in the lists
+     * of their sizes, linked through their first bytes, and the new blocks are cut from the end of the last chunk.
+     * The block larger than the chunk gets its own buffer, which takes the addresses of as many chunks as it covers,
+     * so it is read through the address of its start only, as the lists are. The blocks are at most 1 GB.
+     * close releases the chunks at once instead of waiting for the garbage collector.
+     */
+    static final class OffHeapStore implements Closeable {
+        final int chunkShift; //The chunk holds 1 << chunkShift bytes
+        final FileChannel file; //The file backing the chunks, or null
+        ByteBuffer[] chunks = new ByteBuffer[4]; //The memory, the large block is in the first of its chunks and null in the rest
+        int chunkCount; //The number of the used chunks
+        long top, end; //The address at which the next new block is cut and the end of its chunk
+        final long[] freeBlocks = new long[32]; //The first free block of every size, -1 if there is none
+
+        /**
+         * @param chunkShift The chunk holds 1 << chunkShift bytes, at most 1 GB.
+         * @param path The file backing the memory, or null to use the direct buffers.
+         */
+        OffHeapStore(int chunkShift, Path path) throws IOException {
+            if(chunkShift < 6 || chunkShift > 30) throw new IllegalArgumentException("The chunk size is out of range!");
+            this.chunkShift = chunkShift;
+            file = path == null ? null : FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Arrays.fill(freeBlocks, -1);
+        }
+
+        ByteBuffer chunk(long address){
+            return chunks[(int) (address >>> chunkShift)];
+        }
+
+        int offset(long address){
+            return (int) address & ((1 << chunkShift) - 1);
+        }
+
+        /**
+         * @return The size class of the block holding the given number of bytes.
+         */
+        static int sizeClass(int bytes){
+            return Math.max(4, 32 - Integer.numberOfLeadingZeros(bytes - 1));
+        }
+
+        /**
+         * Gives out the block of 1 << sizeClass bytes.
+         * @return The address of the block.
+         */
+        long allocate(int sizeClass) throws IOException {
+            if(sizeClass > 30) throw new IOException("The block is too large!");
+            long address = freeBlocks[sizeClass];
+            if(address != -1){
+                freeBlocks[sizeClass] = chunk(address).getLong(offset(address));
+                return address;
+            }
+            if(sizeClass > chunkShift) return allocateLarge(sizeClass);
+            long size = 1L << sizeClass;
+            if(top + size > end){
+                top = (long) chunkCount << chunkShift;
+                addChunk();
+                end = top + (1 << chunkShift);
+            }
+            address = top;
+            top += size;
+            return address;
+        }
+
+        private void addChunk() throws IOException {
+            if(chunkCount == chunks.length) chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            chunks[chunkCount] = map((long) chunkCount << chunkShift, 1 << chunkShift);
+            chunkCount++;
+        }
+
+        /**
+         * Gives the block larger than the chunk its own buffer at the addresses of the next chunks.
+         * @return The address of the block.
+         */
+        private long allocateLarge(int sizeClass) throws IOException {
+            int span = 1 << (sizeClass - chunkShift);
+            long address = (long) chunkCount << chunkShift;
+            if(chunkCount + span > chunks.length) chunks = Arrays.copyOf(chunks, Math.max(chunks.length * 2, chunkCount + span));
+            chunks[chunkCount] = map(address, 1 << sizeClass);
+            chunkCount += span;
+            return address;
+        }
+
+        /**
+         * @return The new memory at the given address: the direct buffer, or the part of the file.
+         */
+        private ByteBuffer map(long address, int size) throws IOException {
+            ByteBuffer buffer = file == null ? ByteBuffer.allocateDirect(size)
+                    : file.map(FileChannel.MapMode.READ_WRITE, address, size);
+            return buffer.order(ByteOrder.nativeOrder());
+        }
+
+        /**
+         * Puts the block to the list of the free blocks of its size.
+         */
+        void free(long address, int sizeClass){
+            chunk(address).putLong(offset(address), freeBlocks[sizeClass]);
+            freeBlocks[sizeClass] = address;
+        }
+
+        /**
+         * Copies the bytes between the blocks, which do not overlap.
+         */
+        void copy(long from, long to, int bytes){
+            ByteBuffer source = chunk(from).duplicate();
+            source.limit(offset(from) + bytes).position(offset(from));
+            ByteBuffer target = chunk(to).duplicate();
+            target.position(offset(to));
+            target.put(source);
+        }
+
+        /**
+         * Releases all the chunks and closes the file.
+         */
+        @Override
+        public void close() throws IOException {
+            if(chunks == null) return;
+            for(int i = 0; i < chunkCount; i++){
+                if(chunks[i] != null) release(chunks[i]);
+            }
+            chunks = null;
+            chunkCount = 0;
+            if(file != null) file.close();
+        }
+
+        /**
+         * Frees the memory of the direct or mapped buffer at once. The buffer must not be used after it.
+         * The cleaner is reached by the reflection, as there is no public way before the foreign memory API;
+         * if it is not reachable, the memory is freed when the buffer is collected.
+         */
+        static void release(ByteBuffer buffer){
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                java.lang.reflect.Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(field.get(null), buffer);
+            } catch (NoSuchMethodException e){
+                try {
+                    java.lang.reflect.Method cleaner = buffer.getClass().getMethod("cleaner");
+                    cleaner.setAccessible(true);
+                    Object clean = cleaner.invoke(buffer);
+                    if(clean != null) clean.getClass().getMethod("clean").invoke(clean);
+                } catch (ReflectiveOperationException | RuntimeException ignored){
+                }
+            } catch (ReflectiveOperationException | RuntimeException ignored){
+            }
+        }
+    }
+
+    /**
+     * The implementation of the graph interface with the adjacency lists kept outside of the Java heap, for the graphs whose
+     * edges do not fit into the heap or whose size makes the pauses of the garbage collector too long.
+     * The heap holds only the vertices and the map from their values to their indices.
+     *
+     * Every edge is the record of three ints in the OffHeapStore: the index of the other vertex and the high and the low half
+     * of the bits given by the WeightCodec, so the W_and_B weight takes the weight and the bandwidth. The lists of the outgoing
+     * and the incoming edges of every vertex are the blocks of the records, doubled when they are full. Their addresses, lengths
+     * and capacities are the headers of 32 bytes, also kept in the store by the blocks of HEADERS vertices.
+     *
+     * The indices of the vertices do not change when the other vertices are removed, the removed indices are reused.
+     * The removal of the edge moves the last edge of the list to its place. Transpose only flips the flag, like in FlatMatrixGraph.
+     * close frees all the memory, the graph must not be used after it.
+     * @param <T> The type of the value of the vertex.
+     * @param <E> The type of the weight of the edge.
+     */
+    static class OffHeapGraph<T, E> implements Graph<T, E>, IndexedAdjacency, Closeable{
+        static final int RECORD = 12; //The bytes of the edge: the other vertex and the two halves of the weight bits
+        static final int HEADER = 32; //The bytes of the vertex: the address, the length and the capacity of its two lists
+        static final int OUT = 0, IN = 16; //The offsets of the two lists in the header
+        static final int HEADERS = 1 << 10; //The number of the headers in one block
+
+        final WeightCodec<E> codec; //Converts the weights to the primitive bits and back
+        final OffHeapStore store; //The memory of the headers and the lists
+        HashMap<T, Integer> id = new HashMap<>(); //Hashmap to get the index of the vertex by its value
+        ArrayList<Vertex<T>> val = new ArrayList<>(); //The vertices by their indices, null for the free indices
+        long[] headerBlocks = new long[4]; //The addresses of the blocks of the headers
+        int[] free = new int[16]; //The stack of the free indices
+        int freeCount; //The number of the free indices
+        int edgeCount; //The number of the edges in the graph
+        boolean transposed; //If true, the lists are read in the opposite direction
+
+        /**
+         * Creates the graph in the direct memory with the chunks of 16 MB.
+         * @param codec The codec of the weights.
+         */
+        OffHeapGraph(WeightCodec<E> codec) throws IOException {
+            this(codec, 24, null);
+        }
+
+        /**
+         * @param codec The codec of the weights.
+         * @param chunkShift The chunk of the memory holds 1 << chunkShift bytes.
+         * @param path The file backing the memory, or null to use the direct memory.
+         */
+        OffHeapGraph(WeightCodec<E> codec, int chunkShift, Path path) throws IOException {
+            this.codec = codec;
+            store = new OffHeapStore(Math.max(chunkShift, OffHeapStore.sizeClass(HEADER * HEADERS)), path);
+        }
+
+        /**
+         * @return The number of the vertices in the graph.
+         */
+        int size(){
+            return id.size();
+        }
+
+        /**
+         * @return The address of the header of the vertex.
+         */
+        private long header(int v){
+            return headerBlocks[v / HEADERS] + (long) (v % HEADERS) * HEADER;
+        }
+
+        private int side(boolean outgoing){
+            return outgoing != transposed ? OUT : IN;
+        }
+
+        private long listAddress(long header){
+            return store.chunk(header).getLong(store.offset(header));
+        }
+
+        private int listLength(long header){
+            return store.chunk(header).getInt(store.offset(header) + 8);
+        }
+
+        /**
+         * @return The position of the edge to the other vertex in the list, or -1.
+         */
+        private int find(long header, int other){
+            int length = listLength(header);
+            if(length == 0) return -1;
+            long list = listAddress(header);
+            ByteBuffer chunk = store.chunk(list);
+            int base = store.offset(list);
+            for(int k = 0; k < length; k++){
+                if(chunk.getInt(base + k * RECORD) == other) return k;
+            }
+            return -1;
+        }
+
+        /**
+         * Puts the edge to the list, or updates its bits if it is already there.
+         * @return true if the edge was added.
+         */
+        private boolean put(long header, int other, long bits) throws IOException {
+            ByteBuffer headers = store.chunk(header);
+            int at = store.offset(header);
+            int k = find(header, other);
+            boolean added = k == -1;
+            if(added){
+                k = headers.getInt(at + 8);
+                int capacity = headers.getInt(at + 12);
+                if(k == capacity){
+                    if(capacity > (1 << 29) / RECORD) throw new IOException("The list of the vertex is too large!");
+                    int sizeClass = OffHeapStore.sizeClass(Math.max(2, capacity * 2) * RECORD);
+                    long list = store.allocate(sizeClass);
+                    if(capacity > 0){
+                        long old = headers.getLong(at);
+                        store.copy(old, list, k * RECORD);
+                        store.free(old, OffHeapStore.sizeClass(capacity * RECORD));
+                    }
+                    headers.putLong(at, list);
+                    headers.putInt(at + 12, (1 << sizeClass) / RECORD);
+                }
+                headers.putInt(at + 8, k + 1);
+            }
+            long list = headers.getLong(at);
+            ByteBuffer chunk = store.chunk(list);
+            int record = store.offset(list) + k * RECORD;
+            chunk.putInt(record, other);
+            chunk.putInt(record + 4, (int) (bits >>> 32));
+            chunk.putInt(record + 8, (int) bits);
+            return added;
+        }
+
+        /**
+         * Removes the edge from the list, moving the last edge to its place.
+         * @return true if the edge was in the list.
+         */
+        private boolean remove(long header, int other){
+            int k = find(header, other);
+            if(k == -1) return false;
+            ByteBuffer headers = store.chunk(header);
+            int at = store.offset(header);
+            int last = headers.getInt(at + 8) - 1;
+            headers.putInt(at + 8, last);
+            if(k != last){
+                long list = headers.getLong(at);
+                ByteBuffer chunk = store.chunk(list);
+                int base = store.offset(list);
+                chunk.putInt(base + k * RECORD, chunk.getInt(base + last * RECORD));
+                chunk.putLong(base + k * RECORD + 4, chunk.getLong(base + last * RECORD + 4));
+            }
+            return true;
+        }
+
+        /**
+         * Frees the block of the list and clears its header.
+         */
+        private void clear(long header){
+            ByteBuffer headers = store.chunk(header);
+            int at = store.offset(header);
+            int capacity = headers.getInt(at + 12);
+            if(capacity > 0) store.free(headers.getLong(at), OffHeapStore.sizeClass(capacity * RECORD));
+            headers.putLong(at, 0);
+            headers.putInt(at + 8, 0);
+            headers.putInt(at + 12, 0);
+        }
+
+        /**
+         * @return The bits of the k-th edge of the list.
+         */
+        private long bits(long list, int k){
+            ByteBuffer chunk = store.chunk(list);
+            int record = store.offset(list) + k * RECORD;
+            return ((long) chunk.getInt(record + 4) << 32) | (chunk.getInt(record + 8) & 0xFFFFFFFFL);
+        }
+
+        /**
+         * @return The other vertex of the k-th edge of the list.
+         */
+        private int other(long list, int k){
+            return store.chunk(list).getInt(store.offset(list) + k * RECORD);
+        }
+
+        private Vertex<T> live(Vertex<T> v){
+            return v != null && v.id < val.size() && val.get(v.id) == v ? v : null;
+        }
+
+        /**
+         * Adds the vertex. If the vertex with such value already exists, it is returned.
+         * @param value The value of the vertex
+         * @return The vertex with the given value.
+         */
+        @Override
+        public Vertex<T> addVertex(T value) {
+            Integer existing = id.get(value);
+            if(existing != null) return val.get(existing);
+            int index;
+            if(freeCount > 0){
+                index = free[--freeCount];
+            } else {
+                index = val.size();
+                if(index % HEADERS == 0){
+                    int block = index / HEADERS;
+                    if(block == headerBlocks.length) headerBlocks = Arrays.copyOf(headerBlocks, block * 2);
+                    try {
+                        headerBlocks[block] = store.allocate(OffHeapStore.sizeClass(HEADER * HEADERS));
+                    } catch (IOException e){
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                val.add(null);
+                long header = header(index);
+                ByteBuffer headers = store.chunk(header);
+                for(int b = 0; b < HEADER; b += 8){
+                    headers.putLong(store.offset(header) + b, 0);
+                }
+            }
+            Vertex<T> v = new Vertex<>(value, index);
+            val.set(index, v);
+            id.put(value, index);
+            return v;
+        }
+
+        /**
+         * Removes the given vertex and all its edges. Its index will be given to the next added vertex.
+         * @param v The given vertex.
+         */
+        @Override
+        public void removeVertex(Vertex<T> v) throws Exception {
+            if(v == null) throw new Exception("Vertix is null!");
+            if(live(v) == null) throw new Exception("The vertex is not in the graph!");
+            int index = v.id;
+            long header = header(index);
+            for(int side = OUT; side <= IN; side += IN){
+                long own = header + side;
+                long list = listAddress(own);
+                int length = listLength(own);
+                for(int k = 0; k < length; k++){
+                    int other = other(list, k);
+                    if(other != index) remove(header(other) + (IN - side), index);
+                }
+                edgeCount -= length;
+            }
+            if(find(header + OUT, index) != -1) edgeCount++;
+            clear(header + OUT);
+            clear(header + IN);
+            id.remove(v.value);
+            val.set(index, null);
+            if(freeCount == free.length) free = Arrays.copyOf(free, freeCount * 2);
+            free[freeCount++] = index;
+        }
+
+        /**
+         * Adds a new edge to the graph, or replaces the weight of the existing one.
+         * The null weight removes the edge.
+         * @param from The vertex from which the edge begins
+         * @param to The vertex at which the edge ends.
+         * @param weight The weight of the edge.
+         * @return The created edge.
+         */
+        @Override
+        public Edge<E, T> addEdge(Vertex<T> from, Vertex<T> to, E weight) throws Exception {
+            if(from == null || to == null) throw new Exception("The vertex is null!");
+            if(live(from) == null || live(to) == null) throw new Exception("The vertex is not in the graph!");
+            if(weight == null){
+                removeEdge(from.id, to.id);
+            } else {
+                addEdge(from.id, to.id, codec.encode(weight));
+            }
+            return new Edge<>(from, to, weight);
+        }
+
+        /**
+         * Adds the edge between the vertices with the given indices without creating any objects.
+         * @param bits The encoded weight of the edge.
+         */
+        void addEdge(int from, int to, long bits) throws IOException {
+            if(put(header(from) + side(true), to, bits)) edgeCount++;
+            put(header(to) + side(false), from, bits);
+        }
+
+        /**
+         * Removes the edge between the vertices with the given indices if it exists.
+         */
+        void removeEdge(int from, int to){
+            if(remove(header(from) + side(true), to)) edgeCount--;
+            remove(header(to) + side(false), from);
+        }
+
+        /**
+         * Removes the specified edge if it exists.
+         * @param e The specified edge.
+         */
+        @Override
+        public void removeEdge(Edge<E, T> e) throws Exception {
+            if(e == null) throw new Exception("The edge is null!");
+            if(live(e.from) == null || live(e.to) == null) throw new Exception("The vertex is not in the graph!");
+            removeEdge(e.from.id, e.to.id);
+        }
+
+        /**
+         * Gets all the edges from the specified vertex from its list.
+         * @param v The specified vertex v
+         * @return ArrayList of the requested edges.
+         */
+        @Override
+        public ArrayList<Edge<E, T>> edgesFrom(Vertex<T> v) throws Exception {
+            if(v == null) throw new Exception("The vertex is null!");
+            long header = header(v.id) + side(true);
+            long list = listAddress(header);
+            int length = listLength(header);
+            ArrayList<Edge<E, T>> answer = new ArrayList<>(length);
+            for(int k = 0; k < length; k++){
+                answer.add(new Edge<>(v, val.get(other(list, k)), codec.decode(bits(list, k))));
+            }
+            return answer;
+        }
+
+        /**
+         * Gets all the edges to the specified vertex from its list.
+         * @param v The specified vertex v
+         * @return ArrayList of the requested edges.
+         */
+        @Override
+        public ArrayList<Edge<E, T>> edgesTo(Vertex<T> v) throws Exception {
+            if(v == null) throw new Exception("The vertex is null!");
+            long header = header(v.id) + side(false);
+            long list = listAddress(header);
+            int length = listLength(header);
+            ArrayList<Edge<E, T>> answer = new ArrayList<>(length);
+            for(int k = 0; k < length; k++){
+                answer.add(new Edge<>(val.get(other(list, k)), v, codec.decode(bits(list, k))));
+            }
+            return answer;
+        }
+
+        /**
+         * Finds the vertex by the specified value.
+         * @param value The specified value of the vertex
+         * @return The found vertex or null.
+         */
+        @Override
+        public Vertex<T> findVertex(T value) {
+            Integer index = id.get(value);
+            return index == null ? null : val.get(index);
+        }
+
+        /**
+         * Finds the edge between the vertices of the specified values by scanning the list of the first one.
+         * @param from_value The value of the vertex from which the egde begins.
+         * @param to_value The value of the vertex at which the edge ends
+         * @return The found edge or null.
+         */
+        @Override
+        public Edge<E, T> findEdge(T from_value, T to_value) {
+            Integer id1 = id.get(from_value), id2 = id.get(to_value);
+            if(id1 == null || id2 == null) return null;
+            long header = header(id1) + side(true);
+            int k = find(header, id2);
+            if(k == -1) return null;
+            return new Edge<>(val.get(id1), val.get(id2), codec.decode(bits(listAddress(header), k)));
+        }
+
+        /**
+         * Checks if there is an edge between the two vertices.
+         * @param v The vertex from which the edge begins.
+         * @param u The vertex at which the edge ends.
+         * @return bool if the edge exists or not
+         */
+        @Override
+        public boolean hasEdge(Vertex<T> v, Vertex<T> u) throws Exception {
+            if(v == null || u == null) throw new Exception("Some vertices are null");
+            return find(header(v.id) + side(true), u.id) != -1;
+        }
+
+        @Override
+        public int slots() {
+            return val.size();
+        }
+
+        @Override
+        public boolean isLive(int v) {
+            return val.get(v) != null;
+        }
+
+        @Override
+        public void forEachOut(int vertexId, EdgeVisitor visitor) {
+            forEach(header(vertexId) + side(true), visitor);
+        }
+
+        @Override
+        public void forEachIn(int vertexId, EdgeVisitor visitor) {
+            forEach(header(vertexId) + side(false), visitor);
+        }
+
+        private void forEach(long header, EdgeVisitor visitor){
+            long list = listAddress(header);
+            int length = listLength(header);
+            for(int k = 0; k < length; k++){
+                long bits = bits(list, k);
+                visitor.visit(other(list, k), codec.toLong(bits), codec.bandwidth(bits));
+            }
+        }
+
+        @Override
+        public int nextEdge(int v, int pos) {
+            return pos + 1 < listLength(header(v) + side(true)) ? pos + 1 : -1;
+        }
+
+        @Override
+        public int target(int v, int pos) {
+            return other(listAddress(header(v) + side(true)), pos);
+        }
+
+        @Override
+        public long weightAsLong(int v, int pos) {
+            return codec.toLong(bits(listAddress(header(v) + side(true)), pos));
+        }
+
+        /**
+         * Transposes the graph by flipping the direction in which the lists are read.
+         */
+        void transpose(){
+            transposed = !transposed;
+        }
+
+        /**
+         * Frees the memory of the edges, the graph must not be used after it.
+         */
+        @Override
+        public void close() throws IOException {
+            store.close();
+        }
+    }
+
+    /**
+     * The counts and the latency distributions of the graph operations.
+     *
+     * The latencies are kept in the log-linear histogram, like HdrHistogram: the values below 128 ns have their own buckets,
+     * and every larger power of two is split into 64 buckets, so every value is known within 1.6% up to the largest long.
+     * Every thread records to its own histograms, so the recording does not synchronize, and the dump sums the histograms
+     * of all the threads. The dump made while the other threads record may miss their last values.
+     *
+     * When the metrics are disabled, start and record only check the final flag, so the cost is near zero.
+     * The metrics of the solveA commands are enabled by the system property graph.metrics=true.
+     */
+    static class OperationMetrics {
+        static final String PROPERTY = "graph.metrics";
+        static final int ADD_VERTEX = 0, REMOVE_VERTEX = 1, ADD_EDGE = 2, REMOVE_EDGE = 3, EDGES_FROM = 4, EDGES_TO = 5,
+                FIND_VERTEX = 6, FIND_EDGE = 7, HAS_EDGE = 8, FOR_EACH_OUT = 9, FOR_EACH_IN = 10, IS_ACYCLIC = 11,
+                TRANSPOSE = 12, REACHABLE = 13, COMPONENTS = 14;
+        static final String[] NAMES = {"addVertex", "removeVertex", "addEdge", "removeEdge", "edgesFrom", "edgesTo",
+                "findVertex", "findEdge", "hasEdge", "forEachOut", "forEachIn", "isAcyclic", "transpose", "reachable",
+                "components"};
+        static final int LINEAR = 128, SUB_BITS = 6, BUCKETS = LINEAR + ((63 - 7) << SUB_BITS);
+
+        /**
+         * The histograms of one thread.
+         */
+        static final class Recorder {
+            final long[][] buckets = new long[NAMES.length][]; //The histogram of every operation, created by its first value
+            final long[] count = new long[NAMES.length], sum = new long[NAMES.length], max = new long[NAMES.length];
+
+            void record(int op, long nanos){
+                if(buckets[op] == null) buckets[op] = new long[BUCKETS];
+                buckets[op][bucket(nanos)]++;
+                count[op]++;
+                sum[op] += nanos;
+                if(nanos > max[op]) max[op] = nanos;
+            }
+        }
+
+        final boolean enabled; //If false, nothing is recorded
+        final CopyOnWriteArrayList<Recorder> recorders = new CopyOnWriteArrayList<>(); //The recorders of all the threads
+        final ThreadLocal<Recorder> local = ThreadLocal.withInitial(() -> {
+            Recorder recorder = new Recorder();
+            recorders.add(recorder);
+            return recorder;
+        });
+
+        OperationMetrics(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * @return The metrics enabled by the system property.
+         */
+        static OperationMetrics fromSystemProperty(){
+            return new OperationMetrics(Boolean.getBoolean(PROPERTY));
+        }
+
+        /**
+         * @return The start time of the operation, passed to record.
+         */
+        long start(){
+            return enabled ? System.nanoTime() : 0;
+        }
+
+        /**
+         * Records the operation which began at the given start time.
+         */
+        void record(int op, long start){
+            if(!enabled) return;
+            local.get().record(op, System.nanoTime() - start);
+        }
+
+        /**
+         * @return The index of the bucket of the value.
+         */
+        static int bucket(long nanos){
+            if(nanos < LINEAR) return (int) Math.max(nanos, 0);
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            return LINEAR + ((exponent - 7) << SUB_BITS) + (int) ((nanos >>> (exponent - SUB_BITS)) & ((1 << SUB_BITS) - 1));
+        }
+
+        /**
+         * @return The greatest value which falls into the bucket.
+         */
+        static long bucketEnd(int bucket){
+            if(bucket < LINEAR) return bucket;
+            int exponent = ((bucket - LINEAR) >>> SUB_BITS) + 7, sub = (bucket - LINEAR) & ((1 << SUB_BITS) - 1);
+            return (((1L << SUB_BITS) + sub + 1) << (exponent - SUB_BITS)) - 1;
+        }
+
+        /**
+         * Prints the count, the mean and the percentiles of every recorded operation in microseconds.
+         */
+        void dump(PrintWriter out){
+            if(!enabled){
+                out.println("The metrics are disabled!");
+                return;
+            }
+            out.println("operation count mean_us p50_us p90_us p99_us max_us");
+            for(int op = 0; op < NAMES.length; op++){
+                long[] merged = new long[BUCKETS];
+                long count = 0, sum = 0, max = 0;
+                for(Recorder recorder : recorders){
+                    long[] buckets = recorder.buckets[op];
+                    if(buckets == null) continue;
+                    for(int b = 0; b < BUCKETS; b++){
+                        merged[b] += buckets[b];
+                    }
+                    count += recorder.count[op];
+                    sum += recorder.sum[op];
+                    max = Math.max(max, recorder.max[op]);
+                }
+                if(count == 0) continue;
+                out.printf(Locale.US, "%s %d %.3f %.3f %.3f %.3f %.3f%n", NAMES[op], count, sum / 1e3 / count,
+                        percentile(merged, count, max, 0.5) / 1e3, percentile(merged, count, max, 0.9) / 1e3,
+                        percentile(merged, count, max, 0.99) / 1e3, max / 1e3);
+            }
+        }
+
+        /**
+         * @return The end of the bucket which holds the value of the given share, but not more than the greatest value.
+         */
+        private static long percentile(long[] buckets, long count, long max, double share){
+            long rank = (long) Math.ceil(share * count), seen = 0;
+            for(int b = 0; b < buckets.length; b++){
+                seen += buckets[b];
+                if(seen >= rank) return Math.min(bucketEnd(b), max);
+            }
+            return max;
+        }
+    }
+
+    /**
+     * The graph which records the count and the latency of every operation of the wrapped graph to the OperationMetrics.
+     * @param <T> The type of the value of the vertex.
+     * @param <E> The type of the weight of the edge.
+     */
+    static class MeteredGraph<T, E> implements Graph<T, E> {
+        final Graph<T, E> graph; //The wrapped graph
+        final OperationMetrics metrics; //The metrics of the operations
+
+        MeteredGraph(Graph<T, E> graph, OperationMetrics metrics) {
+            this.graph = graph;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Vertex<T> addVertex(T value) {
+            long start = metrics.start();
+            try {
+                return graph.addVertex(value);
+            } finally {
+                metrics.record(OperationMetrics.ADD_VERTEX, start);
+            }
+        }
+
+        @Override
+        public void removeVertex(Vertex<T> v) throws Exception {
+            long start = metrics.start();
+            try {
+                graph.removeVertex(v);
+            } finally {
+                metrics.record(OperationMetrics.REMOVE_VERTEX, start);
+            }
+        }
+
+        @Override
+        public Edge<E, T> addEdge(Vertex<T> from, Vertex<T> to, E weight) throws Exception {
+            long start = metrics.start();
+            try {
+                return graph.addEdge(from, to, weight);
+            } finally {
+                metrics.record(OperationMetrics.ADD_EDGE, start);
+            }
+        }
+
+        @Override
+        public void removeEdge(Edge<E, T> e) throws Exception {
+            long start = metrics.start();
+            try {
+                graph.removeEdge(e);
+            } finally {
+                metrics.record(OperationMetrics.REMOVE_EDGE, start);
+            }
+        }
+
+        @Override
+        public ArrayList<Edge<E, T>> edgesFrom(Vertex<T> v) throws Exception {
+            long start = metrics.start();
+            try {
+                return graph.edgesFrom(v);
+            } finally {
+                metrics.record(OperationMetrics.EDGES_FROM, start);
+            }
+        }
+
+        @Override
+        public ArrayList<Edge<E, T>> edgesTo(Vertex<T> v) throws Exception {
+            long start = metrics.start();
+            try {
+                return graph.edgesTo(v);
+            } finally {
+                metrics.record(OperationMetrics.EDGES_TO, start);
+            }
+        }
+
+        @Override
+        public Vertex<T> findVertex(T value) {
+            long start = metrics.start();
+            try {
+                return graph.findVertex(value);
+            } finally {
+                metrics.record(OperationMetrics.FIND_VERTEX, start);
+            }
+        }
+
+        @Override
+        public Edge<E, T> findEdge(T from_value, T to_value) {
+            long start = metrics.start();
+            try {
+                return graph.findEdge(from_value, to_value);
+            } finally {
+                metrics.record(OperationMetrics.FIND_EDGE, start);
+            }
+        }
+
+        @Override
+        public boolean hasEdge(Vertex<T> v, Vertex<T> u) throws Exception {
+            long start = metrics.start();
+            try {
+                return graph.hasEdge(v, u);
+            } finally {
+                metrics.record(OperationMetrics.HAS_EDGE, start);
+            }
+        }
+
+        @Override
+        public void forEachOut(int vertexId, EdgeVisitor visitor) {
+            long start = metrics.start();
+            try {
+                graph.forEachOut(vertexId, visitor);
+            } finally {
+                metrics.record(OperationMetrics.FOR_EACH_OUT, start);
+            }
+        }
+
+        @Override
+        public void forEachIn(int vertexId, EdgeVisitor visitor) {
+            long start = metrics.start();
+            try {
+                graph.forEachIn(vertexId, visitor);
+            } finally {
+                metrics.record(OperationMetrics.FOR_EACH_IN, start);
+            }
+        }
+    }
+
+    /**
+     * The benchmarks of the graphs, run by "java com.company.Main bench [options]".
+     *
+     * Every benchmark is run for every backend, size and density: the graph is prepared without the timing,
+     * then the measured part is run warmup times and measured times. The time, the bytes allocated by the thread
+     * and the number of the garbage collections are reported per operation.
+     * The command streams are generated with the mix of input.txt: 63% ADD_EDGE, 17% REMOVE_EDGE, 10% ADD_VERTEX,
+     * 8% REMOVE_VERTEX and 2% HAS_EDGE, on the graph which keeps about n vertices and the given density of the edges.
+     *
+     * Options: -n 256,1024 (the sizes), -d 0.01,0.1 (the densities), -w 3 (the warmup iterations),
+     * -i 5 (the measured iterations), -b name (only the benchmarks and the backends whose names contain it).
+     */
+    static class GraphBenchmark {
+        static final int ADD_VERTEX = 0, REMOVE_VERTEX = 1, ADD_EDGE = 2, REMOVE_EDGE = 3, HAS_EDGE = 4;
+
+        /**
+         * The implementation of the graph under the benchmark.
+         */
+        static abstract class Backend {
+            final String name;
+
+            Backend(String name) {
+                this.name = name;
+            }
+
+            abstract Graph<String, Integer> create();
+
+            abstract void transpose(Graph<String, Integer> graph) throws Exception;
+
+            /**
+             * @return The graph for CycleFinder.
+             */
+            abstract IndexedAdjacency adjacency(Graph<String, Integer> graph);
+
+            /**
+             * Frees the graph made by create when it is not needed any more. Only the graphs outside of the heap need it.
+             */
+            void dispose(Graph<String, Integer> graph) throws Exception {
+            }
+        }
+
+        /**
+         * The measured part of the benchmark.
+         */
+        interface Workload {
+            /**
+             * Prepares the next iteration, not measured.
+             */
+            void prepare() throws Exception;
+
+            /**
+             * Runs the measured part.
+             * @return The number of the operations done.
+             */
+            int run() throws Exception;
+
+            /**
+             * Frees what the last iteration has left, not measured.
+             */
+            void finish() throws Exception;
+        }
+
+        /**
+         * The workload on the graph of the backend, which is made again for every iteration and disposed after it.
+         */
+        abstract static class GraphWorkload implements Workload {
+            final Backend backend;
+            Graph<String, Integer> graph; //The graph of the current iteration
+
+            GraphWorkload(Backend backend) {
+                this.backend = backend;
+            }
+
+            /**
+             * Disposes the graph of the previous iteration and creates the new one.
+             */
+            void create() throws Exception {
+                finish();
+                graph = backend.create();
+            }
+
+            public void finish() throws Exception {
+                if(graph != null) backend.dispose(graph);
+                graph = null;
+            }
+        }
+
+        /**
+         * The commands generated for the size and the density: setup builds the graph, commands change it.
+         * Every command is four ints: the operation, two vertices and the weight.
+         */
+        static class Commands {
+            final String[] names; //The values of the vertices
+            final int[] setup, commands;
+
+            Commands(String[] names, int[] setup, int[] commands) {
+                this.names = names;
+                this.setup = setup;
+                this.commands = commands;
+            }
+        }
+
+        static final Backend[] BACKENDS = {
+                new Backend("AdjacencyMatrixGraph") {
+                    Graph<String, Integer> create() { return new AdjacencyMatrixGraph<>(); }
+                    void transpose(Graph<String, Integer> graph) { ((AdjacencyMatrixGraph<String, Integer>) graph).transpose(); }
+                    IndexedAdjacency adjacency(Graph<String, Integer> graph) { return (IndexedAdjacency) graph; }
+                },
+                new Backend("IntMatrixGraph") {
+                    Graph<String, Integer> create() { return new IntMatrixGraph<>(); }
+                    void transpose(Graph<String, Integer> graph) { ((IntMatrixGraph<String>) graph).transpose(); }
+                    IndexedAdjacency adjacency(Graph<String, Integer> graph) { return (IndexedAdjacency) graph; }
+                },
+                new Backend("IntMatrixGraph+tombstones") {
+                    Graph<String, Integer> create() {
+                        IntMatrixGraph<String> graph = new IntMatrixGraph<>();
+                        graph.useTombstones(0.5);
+                        return graph;
+                    }
+                    void transpose(Graph<String, Integer> graph) { ((IntMatrixGraph<String>) graph).transpose(); }
+                    IndexedAdjacency adjacency(Graph<String, Integer> graph) { return (IndexedAdjacency) graph; }
+                },
+                new Backend("SparseGraph") {
+                    Graph<String, Integer> create() { return new SparseGraph<>(WeightCodec.INT); }
+                    void transpose(Graph<String, Integer> graph) { ((SparseGraph<String, Integer>) graph).transpose(); }
+                    IndexedAdjacency adjacency(Graph<String, Integer> graph) { return (IndexedAdjacency) graph; }
+                },
+                new Backend("ConcurrentGraph") {
+                    Graph<String, Integer> create() { return new ConcurrentGraph<>(WeightCodec.INT); }
+                    void transpose(Graph<String, Integer> graph) { ((ConcurrentGraph<String, Integer>) graph).transpose(); }
+                    IndexedAdjacency adjacency(Graph<String, Integer> graph) { return ((ConcurrentGraph<String, Integer>) graph).snapshot(); }
+                },
+                new Backend("VersionedGraph") {
+                    Graph<String, Integer> create() { return new VersionedGraph<>(WeightCodec.INT); }
+                    void transpose(Graph<String, Integer> graph) throws Exception { ((VersionedGraph<String, Integer>) graph).transpose(); }
+                    IndexedAdjacency adjacency(Graph<String, Integer> graph) { return (IndexedAdjacency) graph; }
+                },
+                new Backend("OffHeapGraph") {
+                    Graph<String, Integer> create() {
+                        try {
+                            return new OffHeapGraph<>(WeightCodec.INT, 20, null);
+                        } catch (IOException e){
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                    void transpose(Graph<String, Integer> graph) { ((OffHeapGraph<String, Integer>) graph).transpose(); }
+                    IndexedAdjacency adjacency(Graph<String, Integer> graph) { return (IndexedAdjacency) graph; }
+                    void dispose(Graph<String, Integer> graph) throws IOException { ((OffHeapGraph<String, Integer>) graph).close(); }
+                }
+        };
+
+        int[] sizes = {256, 1024};
+        double[] densities = {0.01, 0.1};
+        int warmup = 3, iterations = 5;
+        String filter = "";
+        long blackhole; //Keeps the results of the reads, so they are not optimized away
+        final PrintStream report;
+
+        GraphBenchmark(PrintStream report) {
+            this.report = report;
+        }
+
+        static void main(String[] args) throws Exception {
+            GraphBenchmark benchmark = new GraphBenchmark(System.out);
+            for(int i = 0; i + 1 < args.length; i += 2){
+                String value = args[i + 1];
+                switch (args[i]){
+                    case "-n":
+                        benchmark.sizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                        break;
+                    case "-d":
+                        benchmark.densities = Arrays.stream(value.split(",")).mapToDouble(Double::parseDouble).toArray();
+                        break;
+                    case "-w":
+                        benchmark.warmup = Integer.parseInt(value);
+                        break;
+                    case "-i":
+                        benchmark.iterations = Integer.parseInt(value);
+                        break;
+                    case "-b":
+                        benchmark.filter = value;
+                        break;
+                    default:
+                        throw new Exception("Unknown option " + args[i] + "!");
+                }
+            }
+            benchmark.runAll();
+        }
+
+        void runAll() throws Exception {
+            report.printf("%-14s %-26s %6s %7s %14s %12s %5s%n", "benchmark", "backend", "n", "density", "ns/op", "bytes/op", "gc");
+            for(int n : sizes){
+                for(double density : densities){
+                    Commands random = generate(n, density, false, n * 31L + Double.hashCode(density));
+                    Commands dag = generate(n, density, true, n * 37L + Double.hashCode(density));
+                    for(Backend backend : BACKENDS){
+                        measure("commands", backend.name, n, density, commands(backend, random));
+                        measure("addVertex", backend.name, n, density, addVertex(backend, random));
+                        measure("removeVertex", backend.name, n, density, removeVertex(backend, random));
+                        measure("transpose", backend.name, n, density, transpose(backend, random));
+                        measure("isAcyclic", backend.name, n, density, isAcyclic(backend, dag));
+                    }
+                    measure("solveA", "CommandProcessor", n, density, solveA(random));
+                    measure("solveB", "ShortestPathEngine", n, density, solveB(n, density));
+                    measure("solveB", "ShortcutIndex", n, density, shortcuts(n, density));
+                }
+            }
+        }
+
+        /**
+         * Runs the workload and prints the line of the report.
+         */
+        void measure(String benchmark, String backend, int n, double density, Workload workload) throws Exception {
+            if(!(benchmark + " " + backend).contains(filter)) return;
+            long time = 0, bytes = 0, gcs = 0, ops = 0;
+            try {
+                for(int i = 0; i < warmup; i++){
+                    workload.prepare();
+                    workload.run();
+                }
+                for(int i = 0; i < iterations; i++){
+                    workload.prepare();
+                    long gcBefore = gcCount(), bytesBefore = allocatedBytes(), start = System.nanoTime();
+                    ops += workload.run();
+                    time += System.nanoTime() - start;
+                    bytes += allocatedBytes() - bytesBefore;
+                    gcs += gcCount() - gcBefore;
+                }
+            } finally {
+                workload.finish();
+            }
+            ops = Math.max(ops, 1);
+            report.printf("%-14s %-26s %6d %7.3f %14.1f %12.1f %5d%n", benchmark, backend, n, density,
+                    (double) time / ops, (double) bytes / ops, gcs);
+        }
+
+        /**
+         * @return The bytes allocated by this thread so far, or 0 if the JVM does not count them.
+         */
+        static long allocatedBytes(){
+            java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+            if(threads instanceof com.sun.management.ThreadMXBean){
+                return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+            return 0;
+        }
+
+        static long gcCount(){
+            long count = 0;
+            for(java.lang.management.GarbageCollectorMXBean gc : java.lang.management.ManagementFactory.getGarbageCollectorMXBeans()){
+                count += Math.max(gc.getCollectionCount(), 0);
+            }
+            return count;
+        }
+
+        /**
+         * Generates the commands for the graph of about n vertices with the given share of the possible edges.
+         * @param acyclic If true, the edges only go from the smaller name to the greater one.
+         */
+        static Commands generate(int n, double density, boolean acyclic, long seed){
+            Random random = new Random(seed);
+            String[] names = new String[n];
+            for(int i = 0; i < n; i++){
+                names[i] = "v" + i;
+            }
+            boolean[] live = new boolean[n];
+            boolean[][] edges = new boolean[n][n];
+            int[] liveList = new int[n];
+            int[] position = new int[n];
+            int[] liveCount = {0};
+            IntList setup = new IntList(), commands = new IntList();
+            for(int i = 0; i < n; i++){
+                addVertex(i, live, liveList, position, liveCount, setup);
+            }
+            long target = (long) (density * n * n);
+            for(long e = 0; e < target; e++){
+                int a = random.nextInt(n), b = random.nextInt(n);
+                if(acyclic && a >= b) continue;
+                if(!edges[a][b]) commands(setup, ADD_EDGE, a, b, random.nextInt(201) - 100);
+                edges[a][b] = true;
+            }
+            int count = Math.max(20 * n, 1000);
+            for(int c = 0; c < count; c++){
+                int op = random.nextInt(100);
+                if(op < 10){
+                    int v = random.nextInt(n);
+                    if(live[v]) continue;
+                    addVertex(v, live, liveList, position, liveCount, commands);
+                } else if(op < 18){
+                    if(liveCount[0] < n / 2) continue;
+                    int v = liveList[random.nextInt(liveCount[0])];
+                    commands(commands, REMOVE_VERTEX, v, 0, 0);
+                    live[v] = false;
+                    int last = liveList[--liveCount[0]];
+                    liveList[position[v]] = last;
+                    position[last] = position[v];
+                    for(int i = 0; i < n; i++){
+                        edges[v][i] = false;
+                        edges[i][v] = false;
+                    }
+                } else if(op < 81){
+                    int a = liveList[random.nextInt(liveCount[0])], b = liveList[random.nextInt(liveCount[0])];
+                    if(acyclic && a >= b) continue;
+                    commands(commands, ADD_EDGE, a, b, random.nextInt(201) - 100);
+                    edges[a][b] = true;
+                } else if(op < 98){
+                    int a = liveList[random.nextInt(liveCount[0])], start = random.nextInt(n);
+                    for(int k = 0; k < n; k++){
+                        int b = (start + k) % n;
+                        if(edges[a][b]){
+                            commands(commands, REMOVE_EDGE, a, b, 0);
+                            edges[a][b] = false;
+                            break;
+                        }
+                    }
+                } else {
+                    int a = liveList[random.nextInt(liveCount[0])], b = liveList[random.nextInt(liveCount[0])];
+                    commands(commands, HAS_EDGE, a, b, 0);
+                }
+            }
+            return new Commands(names, setup.toArray(), commands.toArray());
+        }
+
+        private static void addVertex(int v, boolean[] live, int[] liveList, int[] position, int[] liveCount, IntList out){
+            commands(out, ADD_VERTEX, v, 0, 0);
+            live[v] = true;
+            position[v] = liveCount[0];
+            liveList[liveCount[0]++] = v;
+        }
+
+        private static void commands(IntList out, int op, int a, int b, int weight){
+            out.add(op);
+            out.add(a);
+            out.add(b);
+            out.add(weight);
+        }
+
+        /**
+         * Applies the commands to the graph through the Graph interface.
+         * @return The number of the commands.
+         */
+        int apply(Graph<String, Integer> graph, String[] names, int[] codes) throws Exception {
+            for(int i = 0; i < codes.length; i += 4){
+                String a = names[codes[i + 1]], b = names[codes[i + 2]];
+                switch (codes[i]){
+                    case ADD_VERTEX:
+                        graph.addVertex(a);
+                        break;
+                    case REMOVE_VERTEX:
+                        graph.removeVertex(graph.findVertex(a));
+                        break;
+                    case ADD_EDGE:
+                        graph.addEdge(graph.findVertex(a), graph.findVertex(b), codes[i + 3]);
+                        break;
+                    case REMOVE_EDGE:
+                        graph.removeEdge(graph.findEdge(a, b));
+                        break;
+                    case HAS_EDGE:
+                        if(graph.hasEdge(graph.findVertex(a), graph.findVertex(b))) blackhole++;
+                        break;
+                }
+            }
+            return codes.length / 4;
+        }
+
+        Workload commands(Backend backend, Commands commands){
+            return new GraphWorkload(backend) {
+                public void prepare() throws Exception {
+                    create();
+                    apply(graph, commands.names, commands.setup);
+                }
+                public int run() throws Exception {
+                    return apply(graph, commands.names, commands.commands);
+                }
+            };
+        }
+
+        Workload addVertex(Backend backend, Commands commands){
+            return new GraphWorkload(backend) {
+                public void prepare() throws Exception {
+                    create();
+                }
+                public int run() {
+                    for(String name : commands.names){
+                        graph.addVertex(name);
+                    }
+                    return commands.names.length;
+                }
+            };
+        }
+
+        Workload removeVertex(Backend backend, Commands commands){
+            return new GraphWorkload(backend) {
+                public void prepare() throws Exception {
+                    create();
+                    apply(graph, commands.names, commands.setup);
+                }
+                public int run() throws Exception {
+                    for(String name : commands.names){
+                        graph.removeVertex(graph.findVertex(name));
+                    }
+                    return commands.names.length;
+                }
+            };
+        }
+
+        Workload transpose(Backend backend, Commands commands){
+            return new GraphWorkload(backend) {
+                public void prepare() throws Exception {
+                    create();
+                    apply(graph, commands.names, commands.setup);
+                }
+                public int run() throws Exception {
+                    for(int i = 0; i < 16; i++){
+                        backend.transpose(graph);
+                    }
+                    return 16;
+                }
+            };
+        }
+
+        Workload isAcyclic(Backend backend, Commands dag){
+            CycleFinder finder = new CycleFinder();
+            return new GraphWorkload(backend) {
+                public void prepare() throws Exception {
+                    create();
+                    apply(graph, dag.names, dag.setup);
+                }
+                public int run() {
+                    if(finder.find(backend.adjacency(graph))) blackhole++;
+                    return 1;
+                }
+            };
+        }
+
+        /**
+         * Runs the commands as the text of the solveA protocol through the CommandProcessor.
+         */
+        Workload solveA(Commands commands) throws Exception {
+            StringBuilder text = new StringBuilder();
+            String[] words = {"ADD_VERTEX", "REMOVE_VERTEX", "ADD_EDGE", "REMOVE_EDGE", "HAS_EDGE"};
+            for(int[] codes : new int[][]{commands.setup, commands.commands}){
+                for(int i = 0; i < codes.length; i += 4){
+                    text.append(words[codes[i]]).append(' ').append(commands.names[codes[i + 1]]);
+                    if(codes[i] >= ADD_EDGE) text.append(' ').append(commands.names[codes[i + 2]]);
+                    if(codes[i] == ADD_EDGE) text.append(' ').append(codes[i + 3]);
+                    text.append('\n');
+                }
+            }
+            byte[] bytes = text.toString().getBytes(StandardCharsets.US_ASCII);
+            int count = (commands.setup.length + commands.commands.length) / 4;
+            PrintWriter discard = new PrintWriter(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            });
+            return new Workload() {
+                public void prepare() {
+                }
+                public int run() throws Exception {
+                    new CommandProcessor(new IntMatrixGraph<>(), discard).run(Channels.newChannel(new ByteArrayInputStream(bytes)));
+                    return count;
+                }
+                public void finish() {
+                }
+            };
+        }
+
+        /**
+         * Creates the random graph of the bandwidth constrained shortest paths, the same for the same size.
+         */
+        static CsrGraph<Integer, W_and_B> pathGraph(Random random, int n, double density){
+            SparseGraph<Integer, W_and_B> builder = new SparseGraph<>(WeightCodec.W_AND_B, n);
+            for(int i = 0; i < n; i++){
+                builder.addVertex(i);
+            }
+            long m = (long) (density * n * n);
+            for(long e = 0; e < m; e++){
+                builder.addEdge(random.nextInt(n), random.nextInt(n),
+                        WeightCodec.W_AND_B.encode(new W_and_B(1 + random.nextInt(100), 1 + random.nextInt(10))));
+            }
+            return builder.freeze();
+        }
+
+        /**
+         * Creates the random queries of solveB: the start, the finish and the minimum bandwidth of every query.
+         */
+        static int[] pathQueries(Random random, int n){
+            int[] queries = new int[3 * 64];
+            for(int i = 0; i < queries.length; i += 3){
+                queries[i] = random.nextInt(n);
+                queries[i + 1] = random.nextInt(n);
+                queries[i + 2] = 1 + random.nextInt(5);
+            }
+            return queries;
+        }
+
+        /**
+         * Runs the queries of the bandwidth constrained shortest paths on the random graph.
+         */
+        Workload solveB(int n, double density){
+            Random random = new Random(n);
+            ShortestPathEngine engine = new ShortestPathEngine(pathGraph(random, n, density));
+            int[] queries = pathQueries(random, n);
+            return new Workload() {
+                public void prepare() {
+                }
+                public int run() {
+                    for(int i = 0; i < queries.length; i += 3){
+                        engine.run(queries[i], queries[i + 1], queries[i + 2]);
+                        if(engine.isReached(queries[i + 1])) blackhole++;
+                    }
+                    return queries.length / 3;
+                }
+                public void finish() {
+                }
+            };
+        }
+
+        /**
+         * Runs the same queries as solveB through the ShortcutIndex. The index is kept between the iterations, so the
+         * hierarchies are built by the warmup and the measured queries only search them, as the repeated queries would.
+         */
+        Workload shortcuts(int n, double density){
+            Random random = new Random(n);
+            ShortcutIndex index = new ShortcutIndex(pathGraph(random, n, density));
+            int[] queries = pathQueries(random, n);
+            return new Workload() {
+                public void prepare() {
+                }
+                public int run() {
+                    for(int i = 0; i < queries.length; i += 3){
+                        if(index.query(queries[i], queries[i + 1], queries[i + 2]).path != null) blackhole++;
+                    }
+                    return queries.length / 3;
+                }
+                public void finish() {
+                }
+            };
+        }
+
+        /**
+         * The growing list of ints.
+         */
+        static class IntList {
+            int[] data = new int[64];
+            int size;
+
+            void add(int value){
+                if(size == data.length) data = Arrays.copyOf(data, size * 2);
+                data[size++] = value;
+            }
+
+            int[] toArray(){
+                return Arrays.copyOf(data, size);
+            }
+        }
+    }
+
+    /**
+     * The stress test of ConcurrentGraph, run by "java com.company.Main stress [options]".
+     *
+     * The writers change the graph at once, every writer only on its own vertices (the values equal to its number modulo
+     * the number of the writers), so it knows what its part of the graph must be and keeps it in the model. The weight of
+     * the edge is made of the values of its vertices, so the reader can tell the edge of one row from the edge of another.
+     * The readers do not stop: they check that every row read by edgesFrom and edgesTo has only the edges of its vertex,
+     * without repeats and with the right weights, that findEdge gives the right edge and that hasEdge agrees with the
+     * same row read again when no writer is seen in between. After every round the writers wait at the barrier, and the graph
+     * is compared with the models: the same vertices, the same edges from and to every vertex, and the same number of
+     * the edges in the snapshot. Transpose is not run, as it changes the parts of all the writers.
+     *
+     * Options: -w 2 (the writers), -r 4 (the readers), -v 64 (the values of the vertices), -o 5000 (the changes of
+     * every writer in one round), -n 20 (the rounds).
+     */
+    static class ConcurrencyStress {
+        int writers = 2, readers = 4, values = 64, operations = 5000, rounds = 20;
+        final PrintStream report; //The output of the result
+        ConcurrentGraph<Integer, Long> graph;
+        final AtomicLong failures = new AtomicLong(), reads = new AtomicLong(), changes = new AtomicLong();
+        final ConcurrentLinkedQueue<String> messages = new ConcurrentLinkedQueue<>(); //The first failures
+        volatile boolean finished; //Stops the readers and, after a failed check, the writers
+
+        ConcurrencyStress(PrintStream report) {
+            this.report = report;
+        }
+
+        static void main(String[] args) throws Exception {
+            ConcurrencyStress stress = new ConcurrencyStress(System.out);
+            for(int i = 0; i + 1 < args.length; i += 2){
+                int value = Integer.parseInt(args[i + 1]);
+                switch (args[i]){
+                    case "-w":
+                        stress.writers = value;
+                        break;
+                    case "-r":
+                        stress.readers = value;
+                        break;
+                    case "-v":
+                        stress.values = value;
+                        break;
+                    case "-o":
+                        stress.operations = value;
+                        break;
+                    case "-n":
+                        stress.rounds = value;
+                        break;
+                    default:
+                        throw new Exception("Unknown option " + args[i] + "!");
+                }
+            }
+            if(!stress.run()) throw new Exception("The stress test failed!");
+        }
+
+        /**
+         * @return The weight of the edge between the vertices with the given values.
+         */
+        static long weight(int from, int to){
+            return ((long) from << 32) | to;
+        }
+
+        void fail(String message){
+            if(failures.incrementAndGet() <= 10) messages.add(message);
+        }
+
+        /**
+         * Runs all the rounds.
+         * @return true if no check failed.
+         */
+        boolean run() throws Exception {
+            graph = new ConcurrentGraph<>(WeightCodec.LONG);
+            List<HashMap<Integer, HashMap<Integer, Long>>> models = new ArrayList<>();
+            Exception[] failure = new Exception[1];
+            //The last writer to come to the barrier checks the graph while the others wait; after a failed check all stop
+            CyclicBarrier barrier = new CyclicBarrier(writers, () -> {
+                try {
+                    check(models);
+                } catch (Exception e){
+                    fail("The check failed: " + e);
+                }
+                if(failures.get() > 0) finished = true;
+            });
+            List<Thread> threads = new ArrayList<>();
+            for(int w = 0; w < writers; w++){
+                HashMap<Integer, HashMap<Integer, Long>> model = new HashMap<>();
+                models.add(model);
+                int number = w;
+                threads.add(new Thread(() -> {
+                    Random random = new Random(number);
+                    try {
+                        for(int round = 0; round < rounds && !finished; round++){
+                            for(int op = 0; op < operations; op++){
+                                write(number, model, random);
+                            }
+                            changes.addAndGet(operations);
+                            barrier.await();
+                        }
+                    } catch (BrokenBarrierException e){
+                        //Another writer has failed and saved its error
+                    } catch (Exception e){
+                        failure[0] = e;
+                        barrier.reset();
+                    }
+                }, "stress-writer-" + w));
+            }
+            List<Thread> readerThreads = new ArrayList<>();
+            for(int r = 0; r < readers; r++){
+                int number = r;
+                readerThreads.add(new Thread(() -> {
+                    Random random = new Random(1000 + number);
+                    try {
+                        while(!finished){
+                            read(random);
+                        }
+                    } catch (Exception e){
+                        fail("The reader failed: " + e);
+                    }
+                }, "stress-reader-" + r));
+            }
+            threads.forEach(Thread::start);
+            readerThreads.forEach(Thread::start);
+            long start = System.nanoTime();
+            try {
+                for(Thread thread : threads){
+                    thread.join();
+                }
+            } finally {
+                finished = true;
+                for(Thread thread : readerThreads){
+                    thread.join();
+                }
+            }
+            if(failure[0] != null) throw failure[0];
+            long millis = (System.nanoTime() - start) / 1000000;
+            report.printf("writers %d, readers %d, changes %d, reads %d, %d ms, failures %d%n", writers, readers,
+                    changes.get(), reads.get(), millis, failures.get());
+            for(String message : messages){
+                report.println(message);
+            }
+            return failures.get() == 0;
+        }
+
+        /**
+         * Makes one random change of the vertices of the writer and applies it to the model.
+         */
+        void write(int number, HashMap<Integer, HashMap<Integer, Long>> model, Random random) throws Exception {
+            int from = own(number, random), to = own(number, random);
+            int op = random.nextInt(100);
+            if(op < 10){
+                graph.addVertex(from);
+                model.putIfAbsent(from, new HashMap<>());
+            } else if(op < 15){
+                Vertex<Integer> v = graph.findVertex(from);
+                if(v == null) return;
+                graph.removeVertex(v);
+                model.remove(from);
+                for(HashMap<Integer, Long> edges : model.values()){
+                    edges.remove(from);
+                }
+            } else {
+                Vertex<Integer> a = graph.findVertex(from), b = graph.findVertex(to);
+                if(a == null || b == null) return;
+                if(op < 75){
+                    graph.addEdge(a, b, weight(from, to));
+                    model.get(from).put(to, weight(from, to));
+                } else {
+                    Edge<Long, Integer> e = graph.findEdge(from, to);
+                    if(e == null) return;
+                    graph.removeEdge(e);
+                    model.get(from).remove(to);
+                }
+            }
+        }
+
+        /**
+         * @return The random value of the vertex of the writer.
+         */
+        int own(int number, Random random){
+            int count = (values - number + writers - 1) / writers;
+            return number + random.nextInt(Math.max(count, 1)) * writers;
+        }
+
+        /**
+         * Makes one random read and checks what it has read.
+         */
+        void read(Random random) throws Exception {
+            reads.incrementAndGet();
+            int a = random.nextInt(values), b = random.nextInt(values);
+            Vertex<Integer> v = graph.findVertex(a);
+            if(v == null) return;
+            switch (random.nextInt(4)){
+                case 0:
+                    checkRow(graph.edgesFrom(v), v, true);
+                    break;
+                case 1:
+                    checkRow(graph.edgesTo(v), v, false);
+                    break;
+                case 2: {
+                    Edge<Long, Integer> e = graph.findEdge(a, b);
+                    if(e != null && (e.from.value != a || e.to.value != b || e.weight != weight(a, b))){
+                        fail("findEdge(" + a + ", " + b + ") gave " + e.from.value + " -> " + e.to.value + " of weight " + e.weight);
+                    }
+                    break;
+                }
+                default: {
+                    Vertex<Integer> u = graph.findVertex(b);
+                    if(u == null) return;
+                    long stamp = graph.lock.tryOptimisticRead();
+                    boolean found = graph.hasEdge(v, u);
+                    boolean inRow = false;
+                    for(Edge<Long, Integer> e : graph.edgesFrom(v)){
+                        if(e.to.id == u.id) inRow = true;
+                    }
+                    if(stamp != 0 && graph.lock.validate(stamp) && found != inRow){
+                        fail("hasEdge(" + a + ", " + b + ") is " + found + " while the row says " + inRow);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Checks that the row has only the edges of the vertex, without repeats and with the right weights.
+         */
+        void checkRow(ArrayList<Edge<Long, Integer>> row, Vertex<Integer> v, boolean out){
+            HashSet<Integer> seen = new HashSet<>();
+            for(Edge<Long, Integer> e : row){
+                Vertex<Integer> own = out ? e.from : e.to, other = out ? e.to : e.from;
+                if(own != v || !seen.add(other.value) || e.weight != weight(e.from.value, e.to.value)){
+                    fail((out ? "edgesFrom(" : "edgesTo(") + v.value + ") has the edge " + e.from.value + " -> "
+                            + e.to.value + " of weight " + e.weight);
+                }
+            }
+        }
+
+        /**
+         * Compares the graph with the models while the writers wait.
+         */
+        void check(List<HashMap<Integer, HashMap<Integer, Long>>> models) throws Exception {
+            int vertices = 0, edges = 0;
+            HashMap<Integer, HashMap<Integer, Long>> incoming = new HashMap<>();
+            for(HashMap<Integer, HashMap<Integer, Long>> model : models){
+                for(Map.Entry<Integer, HashMap<Integer, Long>> entry : model.entrySet()){
+                    vertices++;
+                    edges += entry.getValue().size();
+                    incoming.putIfAbsent(entry.getKey(), new HashMap<>());
+                    for(Map.Entry<Integer, Long> edge : entry.getValue().entrySet()){
+                        incoming.computeIfAbsent(edge.getKey(), key -> new HashMap<>()).put(entry.getKey(), edge.getValue());
+                    }
+                }
+            }
+            if(graph.size() != vertices) fail("The graph has " + graph.size() + " vertices instead of " + vertices);
+            for(HashMap<Integer, HashMap<Integer, Long>> model : models){
+                for(Map.Entry<Integer, HashMap<Integer, Long>> entry : model.entrySet()){
+                    Vertex<Integer> v = graph.findVertex(entry.getKey());
+                    if(v == null){
+                        fail("The vertex " + entry.getKey() + " is lost");
+                        continue;
+                    }
+                    HashMap<Integer, Long> out = new HashMap<>(), in = new HashMap<>();
+                    for(Edge<Long, Integer> e : graph.edgesFrom(v)){
+                        out.put(e.to.value, e.weight);
+                    }
+                    for(Edge<Long, Integer> e : graph.edgesTo(v)){
+                        in.put(e.from.value, e.weight);
+                    }
+                    if(!out.equals(entry.getValue())) fail("The edges from " + entry.getKey() + " are " + out + " instead of " + entry.getValue());
+                    if(!in.equals(incoming.get(entry.getKey()))) fail("The edges to " + entry.getKey() + " are " + in + " instead of " + incoming.get(entry.getKey()));
+                }
+            }
+            if(failures.get() > 0) return; //The snapshot is built only from the rows which agree with each other
+            int snapshotEdges = graph.snapshot().edgeCount();
+            if(snapshotEdges != edges) fail("The snapshot has " + snapshotEdges + " edges instead of " + edges);
+        }
+    }
+
+    FastScanner in;
+    PrintWriter out;
+
+    /**
+     * Checks all the methods of graph interface by answering requests in the file.
+     * The requests are read and applied by the CommandProcessor, which is the only dispatcher of the solveA protocol.
+     * @throws IOException
+     */
+    private void solveA() throws Exception {
+        new CommandProcessor(new IntMatrixGraph<>(), out).runPipelined(Channels.newChannel(System.in));
+    }
+
+    /**
+     * Prints the cycle as the answer to IS_ACYCLIC: its weight and the values of its vertices.
+     * @param out The output.
+     * @param graph The graph of the cycle.
+     * @param cycle The indices of the vertices of the cycle.
+     * @param length The number of the vertices of the cycle.
+     * @param weight The total weight of the cycle.
+     */
+    static void printCycle(PrintWriter out, FlatMatrixGraph<String, ?> graph, int[] cycle, int length, long weight){
+        out.print(weight + " ");
+        for (int i = 0; i < length; i++) {
+            out.print(graph.val.get(cycle[i]).value + " ");
+        }
+        out.println();
+    }
+
+    /**
+     * Prints the answer to COMPONENTS: ACYCLIC as for IS_ACYCLIC if there are no cycles, otherwise for every component
+     * with a cycle the number and the values of its vertices, and then its minimum cycle as for IS_ACYCLIC.
+     * @param out The output.
+     * @param graph The graph of the components.
+     * @param components The decomposition of the graph with the found cycles.
+     */
+    static void printComponents(PrintWriter out, FlatMatrixGraph<String, ?> graph, StrongComponents components){
+        if(!components.hasCycle()){
+            out.println("ACYCLIC");
+            return;
+        }
+        for(int c = 0; c < components.count; c++){
+            int[] cycle = components.cycles[c];
+            if(cycle == null) continue;
+            out.print(components.offsets[c + 1] - components.offsets[c] + " ");
+            for(int i = components.offsets[c]; i < components.offsets[c + 1]; i++){
+                out.print(graph.val.get(components.members[i]).value + " ");
+            }
+            out.println();
+            printCycle(out, graph, cycle, cycle.length, components.cycleWeights[c]);
+        }
+    }
+
+    /**
+     * Implements Dijkstra's algorithm on the AdjacencyMatrixGraph.
+     * The algorithm is expanded in order to satisfy the conditions of the minimum bandwidth for the shortest path, which is stored in pair with the weight of the edge as the edge's total weight value.
+     * All the edges with the bandwidth lesser than the required minimum one are not taken into consideration while computing the algorithm.
+     * @throws IOException
+     */
+    private void solveB() throws Exception {
+        CsrGraph<Integer, W_and_B> graph = readPathGraph();
+        int startVertex = in.nextInt() - 1, finishVertex = in.nextInt() - 1, minBandwidth = in.nextInt();
+        ShortestPathEngine engine = new ShortestPathEngine(graph);
+        engine.run(startVertex, finishVertex, minBandwidth);
+        new PathResult(engine, finishVertex, new int[graph.size()]).print(out);
+    }
+
+    /**
+     * Answers the query of solveB for several minimum bandwidths with the same start and finish vertices.
+     * The graph is given as in solveB, and then the start and the finish vertices, the number of the bandwidths and
+     * the bandwidths themselves. One search of the ParetoFrontier answers all of them, every answer is printed as in solveB
+     * on its own lines.
+     * @throws IOException
+     */
+    private void solveBFrontier() throws Exception {
+        CsrGraph<Integer, W_and_B> graph = readPathGraph();
+        int startVertex = in.nextInt() - 1, finishVertex = in.nextInt() - 1, k = in.nextInt();
+        ParetoFrontier frontier = new ParetoFrontier(graph);
+        frontier.run(startVertex);
+        for(int i = 0; i < k; i++){
+            frontier.query(finishVertex, in.nextInt()).print(out);
+            out.println();
+        }
+    }
+
+    /**
+     * Reads the graph of solveB: the numbers of the vertices and the edges, and then every edge with its weight and bandwidth.
+     * @return The frozen graph with the indices of the vertices starting from zero.
+     */
+    private CsrGraph<Integer, W_and_B> readPathGraph() throws Exception {
+        int n = in.nextInt(), m = in.nextInt();
+        ArrayList<Integer> values = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            values.add(i);
+        }
+        CsrBuilder<Integer, W_and_B> builder = new CsrBuilder<>(WeightCodec.W_AND_B, values, m);
+        for(int i = 0; i < m; i++){
+            int v = in.nextInt() - 1, u = in.nextInt() - 1;
+            int weight = in.nextInt(), bandwidth = in.nextInt();
+            builder.add(v, u, W_and_B.bits(weight, bandwidth));
+        }
+        return builder.build();
+    }
+
+    static class FastScanner {
+        StringTokenizer st;
+        BufferedReader br;
+        FastScanner(InputStream s) {
+            br = new BufferedReader(new InputStreamReader(s));
+        }
+        String next() throws IOException {
+            while (st == null || !st.hasMoreTokens())
+                st = new StringTokenizer(br.readLine());
+            return st.nextToken();
+        }
+
+        String thisLine() throws IOException{
+            while (st == null || !st.hasMoreTokens())
+                st = new StringTokenizer(br.readLine());
+            StringBuilder ans = new StringBuilder();
+            while (st.hasMoreTokens()){
+                ans.append(st.nextToken());
+                ans.append(" ");
+            }
+            ans.deleteCharAt(ans.length() - 1);
+            return ans.toString();
+        }
+
+        /**
+         * Checks if there is one more token, reading the next lines when needed.
+         * Blocks until the line is read or the input ends, so the slow streams are not cut.
+         */
+        boolean hasNext() throws IOException {
+            while (st == null || !st.hasMoreTokens()) {
+                String line = br.readLine();
+                if (line == null) return false;
+                st = new StringTokenizer(line);
+            }
+            return true;
+        }
+        int nextInt() throws IOException {
+            return Integer.parseInt(next());
+        }
+        long nextLong() throws IOException {
+            return Long.parseLong(next());
+        }
+        double nextDouble() throws IOException {
+            return Double.parseDouble(next());
+        }
+
+        double nextDollarDouble() throws IOException {
+            return Double.parseDouble(next().substring(1));
+        }
+
+        String nextLine() throws IOException {
+            return br.readLine();
+        }
+        boolean hasNextLine() throws IOException {
+            br.mark(1);
+            if (br.read() == -1) return false;
+            br.reset();
+            return true;
+        }
+    }
+
+    /**
+     * @param frontier If true, the input is answered by solveBFrontier, otherwise by solveA.
+     */
+    private void run(boolean frontier) throws Exception {
+        //in = new FastScanner(new FileInputStream("input.txt"));
         in = new FastScanner(System.in);
         out = new PrintWriter(System.out);
 
         try {
-            solveA();
+            if(frontier) solveBFrontier(); else solveA();
         } catch (Exception e){
             out.println(e.getMessage());
         }
@@ -583,6 +8069,14 @@ public class Main {
         out.close();
     }
     public static void main(String[] args) throws Exception {
-        new Main().run();
+        if(args.length > 0 && args[0].equals("bench")){
+            GraphBenchmark.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if(args.length > 0 && args[0].equals("stress")){
+            ConcurrencyStress.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        new Main().run(args.length > 0 && args[0].equals("frontier"));
     }
 }